@@ -0,0 +1,198 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.List;
+
+// Binary snapshot format, used instead of tasks.txt with -Dtodolist.format=binary. All numbers are big-endian.
+//   header: int magic "TDLB", short version, short flags (unused), long journal seq, int task count
+//   task:   long uid, int epoch day, byte flags (1 = completed, 2 = recurring), byte priority (index into
+//           Task.PRIORITIES, or -1), int text length, UTF-8 text, then int length and UTF-8 priority only when the
+//           priority byte is -1, then int length and the UTF-8 Recurrence only for a recurring task.
+//           Version 1 files, still readable, have no uid; versions before 3 have no recurring tasks
+class BinaryTaskStore {
+    static final int MAGIC = 0x54444C42;
+    static final short VERSION = 3;
+    private static final short VERSION_WITHOUT_UIDS = 1;
+    static final int HEADER_BYTES = 20;
+    private static final int RECORD_BYTES = 18;
+    private static final int UID_BYTES = 8;
+    private static final int COMPLETED = 1;
+    private static final int RECURRING = 2;
+    private static final int BUFFER_BYTES = 1 << 20;
+    
+    // Written to a temp file and moved into place, like the text snapshot
+    static void write(Path target, List<Task> tasks, long seq) throws IOException {
+        Path temp = Paths.get(target + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(seq).putInt(tasks.size());
+            
+            for (Task task : tasks) {
+                byte[] text = task.getText().getBytes(StandardCharsets.UTF_8);
+                int priority = priorityIndex(task.getPriority());
+                byte[] otherPriority = priority < 0 ? String.valueOf(task.getPriority()).getBytes(StandardCharsets.UTF_8) : null;
+                byte[] recurrence = task.getRecurrence() == null ? null : task.getRecurrence().encode().getBytes(StandardCharsets.UTF_8);
+                int size = RECORD_BYTES + text.length + (otherPriority == null ? 0 : 4 + otherPriority.length)
+                    + (recurrence == null ? 0 : 4 + recurrence.length);
+                if (buffer.remaining() < size) {
+                    drain(channel, buffer);
+                    if (buffer.capacity() < size) buffer = ByteBuffer.allocate(size);
+                }
+                
+                buffer.putLong(task.getUid())
+                    .putInt(task.getDueDay())
+                    .put((byte) ((task.isCompleted() ? COMPLETED : 0) | (recurrence != null ? RECURRING : 0)))
+                    .put((byte) priority)
+                    .putInt(text.length)
+                    .put(text);
+                if (otherPriority != null) buffer.putInt(otherPriority.length).put(otherPriority);
+                if (recurrence != null) buffer.putInt(recurrence.length).put(recurrence);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    static TaskSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ChannelReader in = new ChannelReader(channel);
+            ByteBuffer buffer = in.require(HEADER_BYTES);
+            if (buffer.getInt() != MAGIC) throw new IOException(path + " is not a binary task file");
+            short version = buffer.getShort();
+            if (version < VERSION_WITHOUT_UIDS || version > VERSION) throw new IOException(path + " has unsupported version " + version);
+            boolean hasUids = version != VERSION_WITHOUT_UIDS;
+            buffer.getShort();
+            
+            TaskSnapshot snapshot = new TaskSnapshot();
+            snapshot.seq = buffer.getLong();
+            snapshot.missingUids = !hasUids;
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                buffer = in.require(hasUids ? RECORD_BYTES : RECORD_BYTES - UID_BYTES);
+                long uid = hasUids ? buffer.getLong() : Task.newUid();
+                int epochDay = buffer.getInt();
+                int flags = buffer.get();
+                int priority = buffer.get();
+                String text = in.readString(buffer.getInt());
+                String priorityText = priority >= 0 && priority < Task.PRIORITIES.length ? Task.PRIORITIES[priority] : in.readString(in.require(4).getInt());
+                Recurrence recurrence = null;
+                if ((flags & RECURRING) != 0) {
+                    try {
+                        recurrence = Recurrence.parse(in.readString(in.require(4).getInt()));
+                    } catch (DateTimeException | IllegalArgumentException e) {
+                        throw new IOException(path + " has a recurring task that can't be read", e);
+                    }
+                }
+                snapshot.tasks.add(new Task(text, (flags & COMPLETED) != 0, epochDay, priorityText, uid, recurrence));
+            }
+            return snapshot;
+        }
+    }
+    
+    // The tasks straight into columns, with no Task or String made along the way. Ignores the journal seq
+    static TaskColumns readColumns(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ChannelReader in = new ChannelReader(channel);
+            ByteBuffer buffer = in.require(HEADER_BYTES);
+            if (buffer.getInt() != MAGIC) throw new IOException(path + " is not a binary task file");
+            short version = buffer.getShort();
+            if (version < VERSION_WITHOUT_UIDS || version > VERSION) throw new IOException(path + " has unsupported version " + version);
+            boolean hasUids = version != VERSION_WITHOUT_UIDS;
+            buffer.getShort();
+            buffer.getLong();
+            int count = buffer.getInt();
+            
+            // Text is most of what's left of the file
+            TaskColumns columns = new TaskColumns(count, (int) Math.min(Integer.MAX_VALUE, Math.max(channel.size() - (long) count * RECORD_BYTES, 0)));
+            for (int i = 0; i < count; i++) {
+                buffer = in.require(hasUids ? RECORD_BYTES : RECORD_BYTES - UID_BYTES);
+                long uid = hasUids ? buffer.getLong() : Task.newUid();
+                int epochDay = buffer.getInt();
+                int flags = buffer.get();
+                int priority = buffer.get();
+                ByteBuffer text = in.readBytes(buffer.getInt());
+                // The text has to be copied out before the reader's buffer moves on
+                if (priority >= 0 && priority < Task.PRIORITIES.length && (flags & RECURRING) == 0) {
+                    columns.add(uid, epochDay, (flags & COMPLETED) != 0, Task.PRIORITIES[priority], text, null);
+                    continue;
+                }
+                String taskText = StandardCharsets.UTF_8.decode(text).toString();
+                String priorityText = priority >= 0 && priority < Task.PRIORITIES.length ? Task.PRIORITIES[priority] : in.readString(in.require(4).getInt());
+                Recurrence recurrence = null;
+                if ((flags & RECURRING) != 0) {
+                    try {
+                        recurrence = Recurrence.parse(in.readString(in.require(4).getInt()));
+                    } catch (DateTimeException | IllegalArgumentException e) {
+                        throw new IOException(path + " has a recurring task that can't be read", e);
+                    }
+                }
+                columns.add(new Task(taskText, (flags & COMPLETED) != 0, epochDay, priorityText, uid, recurrence));
+            }
+            columns.trimToSize();
+            return columns;
+        }
+    }
+    
+    private static int priorityIndex(String priority) {
+        for (int i = 0; i < Task.PRIORITIES.length; i++) {
+            if (Task.PRIORITIES[i].equals(priority)) return i;
+        }
+        return -1;
+    }
+    
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+    
+    // Buffered sequential reads from a FileChannel
+    private static class ChannelReader {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).flip();
+        
+        ChannelReader(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        // The buffer, holding at least the given number of unread bytes
+        ByteBuffer require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return buffer;
+            if (buffer.capacity() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) throw new EOFException("Task file ends in the middle of a record");
+            }
+            buffer.flip();
+            return buffer;
+        }
+        
+        // The next length bytes, valid until the next read
+        ByteBuffer readBytes(int length) throws IOException {
+            ByteBuffer bytes = require(length);
+            ByteBuffer slice = bytes.slice().limit(length);
+            bytes.position(bytes.position() + length);
+            return slice;
+        }
+        
+        String readString(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            require(length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
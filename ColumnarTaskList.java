@@ -0,0 +1,283 @@
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.Lock;
+
+// Tasks kept in TaskColumns (-Dtodolist.storage=columns). A task's id is its row, and the sorted order is an int[] of
+// rows. Task objects are made only for the tasks read, as views of their row at that moment, so holding a million tasks
+// costs no million objects; the list shows the few it renders. A view stands for its row until the task is removed,
+// and current() gives the row's up-to-date values. Neither views nor the objects passed to add follow later changes,
+// so callers read tasks back from the repository rather than keep them. Rows of removed tasks are not reused, since
+// their text stays in the arena; the space comes back when the tasks are next loaded. Occurrences of recurring tasks
+// are few and are made afresh as the calendar moves, so they stay objects: their rows have no text and are reused
+class ColumnarTaskList implements TaskList {
+    private static final int POSITION_BITS = 30; // Of the sort key; also caps the rows sorted at once
+
+    private final TaskColumns columns = new TaskColumns(0, 0);
+    private final BitSet liveRows = new BitSet();
+    private final Map<Integer, Task> occurrencesByRow = new HashMap<>();
+    private final ArrayDeque<Integer> freeOccurrenceRows = new ArrayDeque<>();
+    private int[] order = new int[16]; // Rows in Task.ORDER
+    private int size;
+    // Position in order by row, up to date for the rows in order before positionsValidTo. Renumbered by the readers
+    // that need it, synchronized on this
+    private int[] positions = new int[16];
+    private int positionsValidTo = 0;
+    private boolean unsorted; // Rows added or changed with sortLater since the last sort(), so found by scanning
+    private final Lock readLock; // The repository's; snapshots take it to read the columns
+
+    ColumnarTaskList(Lock readLock) {
+        this.readLock = readLock;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Task get(int position) {
+        return byId(order[position]);
+    }
+
+    @Override
+    public Task byId(int id) {
+        Task occurrence = occurrencesByRow.get(id);
+        return occurrence != null ? occurrence : view(id);
+    }
+
+    @Override
+    public Task current(Task task) {
+        int row = task.id;
+        if (row < 0 || !liveRows.get(row)) return null;
+        Task occurrence = occurrencesByRow.get(row);
+        if (occurrence != null || task.getSeries() != null) return occurrence == task ? task : null;
+        return columns.getUid(row) == task.getUid() ? view(row) : null;
+    }
+
+    @Override
+    public int add(Task task, boolean sortLater) {
+        int row;
+        if (task.getSeries() != null) {
+            Integer freeRow = freeOccurrenceRows.poll();
+            if (freeRow != null) {
+                row = freeRow;
+                columns.reuse(row, task.getUid(), task.getDueDay(), task.isCompleted(), task.getPriority());
+            } else {
+                row = columns.add(task.getUid(), task.getDueDay(), task.isCompleted(), task.getPriority(), ByteBuffer.allocate(0), null);
+            }
+            occurrencesByRow.put(row, task);
+        } else {
+            row = columns.add(task);
+        }
+        task.id = row;
+        liveRows.set(row);
+        if (row >= positions.length) positions = Arrays.copyOf(positions, Math.max(row + 1, positions.length + (positions.length >> 1)));
+        if (size == order.length) order = Arrays.copyOf(order, size + (size >> 1));
+
+        if (sortLater) {
+            order[size++] = row;
+            unsorted = true;
+        } else {
+            int position = insertionPoint(row);
+            insertAt(position, row);
+            positionsValidTo = Math.min(positionsValidTo, position);
+        }
+        return row;
+    }
+
+    @Override
+    public void removeAll(Collection<Task> removed) {
+        if (removed.isEmpty()) return;
+        int first;
+        if (removed.size() == 1 && !unsorted) {
+            first = indexOf(removed.iterator().next().id);
+            removeAt(first);
+            for (Task task : removed) liveRows.clear(task.id);
+        } else {
+            for (Task task : removed) liveRows.clear(task.id);
+            first = size;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (liveRows.get(order[i])) order[kept++] = order[i];
+                else first = Math.min(first, i);
+            }
+            size = kept;
+        }
+        positionsValidTo = Math.min(positionsValidTo, first);
+        for (Task task : removed) {
+            if (occurrencesByRow.remove(task.id) != null) freeOccurrenceRows.push(task.id);
+            task.id = -1;
+        }
+    }
+
+    @Override
+    public void setCompleted(Task task, boolean completed, boolean sortLater) {
+        int row = task.id;
+        if (sortLater) {
+            columns.setCompleted(row, completed);
+            task.setCompleted(completed);
+            unsorted = true;
+            return;
+        }
+        // Take it out while its completed flag still matches its place, then slot it back in
+        int from = indexOf(row);
+        removeAt(from);
+        columns.setCompleted(row, completed);
+        task.setCompleted(completed);
+        int to = insertionPoint(row);
+        insertAt(to, row);
+        positionsValidTo = Math.min(positionsValidTo, Math.min(from, to));
+    }
+
+    // Sorts keys of completed, due day and the current position packed into longs, so it is a sort of primitives and
+    // equal tasks keep their order
+    @Override
+    public void sort() {
+        if (size > 1 << POSITION_BITS) throw new IllegalStateException("More than " + (1 << POSITION_BITS) + " tasks");
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            int row = order[i];
+            long day = (long) columns.getDueDay(row) - Integer.MIN_VALUE;
+            keys[i] = (columns.isCompleted(row) ? 1L << 62 : 0) | day << POSITION_BITS | i;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < size; i++) sorted[i] = order[(int) (keys[i] & ((1 << POSITION_BITS) - 1))];
+        order = sorted;
+        positionsValidTo = 0;
+        unsorted = false;
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        Map<Integer, Task> occurrences = occurrencesByRow.isEmpty() ? Collections.emptyMap() : new HashMap<>(occurrencesByRow);
+        BitSet completed = new BitSet(size);
+        for (int i = 0; i < size; i++) completed.set(i, columns.isCompleted(order[i]));
+        return new Rows(Arrays.copyOf(order, size), occurrences, completed);
+    }
+
+    @Override
+    public int[] positionsOf(BitSet ids) {
+        synchronized (this) {
+            for (int i = positionsValidTo; i < size; i++) positions[order[i]] = i;
+            positionsValidTo = size;
+        }
+        // Marking positions in a bitset puts them in order without sorting
+        BitSet marked = new BitSet(size);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) marked.set(positions[id]);
+        return marked.stream().toArray();
+    }
+
+    @Override
+    public void trimToSize() {
+        columns.trimToSize();
+        order = Arrays.copyOf(order, Math.max(size, 16));
+        positions = Arrays.copyOf(positions, Math.max(columns.size(), 16));
+    }
+
+    private Task view(int row) {
+        Task task = columns.get(row);
+        task.id = row;
+        return task;
+    }
+
+    // Incomplete tasks first, then by due date, as Task.ORDER
+    private int compare(int row1, int row2) {
+        boolean completed1 = columns.isCompleted(row1);
+        if (completed1 != columns.isCompleted(row2)) return completed1 ? 1 : -1;
+        return Integer.compare(columns.getDueDay(row1), columns.getDueDay(row2));
+    }
+
+    // Index in order of the first row that sorts after this one
+    private int insertionPoint(int row) {
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(order[middle], row) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Where the row is in order, or -1 if it isn't there
+    private int indexOf(int row) {
+        if (unsorted) {
+            for (int i = 0; i < size; i++) {
+                if (order[i] == row) return i;
+            }
+            return -1;
+        }
+        // Search back through the run of rows that sort equal to it
+        for (int i = insertionPoint(row) - 1; i >= 0 && compare(order[i], row) == 0; i--) {
+            if (order[i] == row) return i;
+        }
+        return -1;
+    }
+
+    private void insertAt(int position, int row) {
+        System.arraycopy(order, position, order, position + 1, size - position);
+        order[position] = row;
+        size++;
+    }
+
+    private void removeAt(int position) {
+        System.arraycopy(order, position + 1, order, position, size - position - 1);
+        size--;
+    }
+
+    // A snapshot: the rows in sorted order, read as Task objects only when asked for. The repository may be adding rows
+    // (and so growing the columns) meanwhile, so reads take its read lock. The completed flags, the one value a row
+    // changes in place, are copied when the snapshot is taken, and the rows of removed tasks keep their other values,
+    // so a snapshot goes on reading the tasks as they were. Occurrences are the list's own objects, so as in an
+    // ObjectTaskList snapshot they show later toggles
+    class Rows extends AbstractList<Task> implements Snapshot, RandomAccess {
+        private final int[] rows;
+        private final Map<Integer, Task> occurrences;
+        private final BitSet completed; // By position
+
+        Rows(int[] rows, Map<Integer, Task> occurrences, BitSet completed) {
+            this.rows = rows;
+            this.occurrences = occurrences;
+            this.completed = completed;
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+
+        @Override
+        public Task get(int index) {
+            int row = rows[index];
+            Task occurrence = occurrences.get(row);
+            if (occurrence != null) return occurrence;
+            readLock.lock();
+            try {
+                Task task = view(row);
+                task.setCompleted(completed.get(index));
+                return task;
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public boolean wasCompleted(int position) {
+            return completed.get(position);
+        }
+
+        // Whether index here and otherIndex in other are the same task. Each get() makes a new Task, so == can't tell
+        boolean sameTask(int index, Rows other, int otherIndex) {
+            int row = rows[index];
+            return row == other.rows[otherIndex] && occurrences.get(row) == other.occurrences.get(row);
+        }
+    }
+}
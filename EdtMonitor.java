@@ -0,0 +1,37 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+
+// Measures how long events wait for the Swing event dispatch thread. Every PROBE_INTERVAL_MS a probe is posted to
+// the EDT and the delay until it runs is recorded as "edt.delay"; a long delay means the EDT was stalled
+class EdtMonitor {
+    private static final long PROBE_INTERVAL_MS = 100;
+    private static final LatencyHistogram EDT_DELAY = Metrics.latency("edt.delay");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "edt-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only one probe is queued at a time, so a stall is measured once rather than by a pile of probes behind it
+    private final AtomicBoolean probePending = new AtomicBoolean();
+
+    void start() {
+        scheduler.scheduleAtFixedRate(this::probe, PROBE_INTERVAL_MS, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void probe() {
+        if (!probePending.compareAndSet(false, true)) return;
+        long posted = System.nanoTime();
+        SwingUtilities.invokeLater(() -> {
+            Metrics.record(EDT_DELAY, posted);
+            probePending.set(false);
+        });
+    }
+}
@@ -0,0 +1,148 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+// Opt-in (-Dtodolist.edtWatchdog=true) replacement for the Swing event queue that times every event it dispatches.
+// A sampler thread grabs the EDT's stack once an event has run for STALL_MS, and when the event finishes the stall,
+// its stack and the TodoListApp action that caused it are written to edt-stalls.<n>.log (rolled at 1 MB, 3 files).
+// Time spent waiting inside a nested event loop, such as a modal dialog's, doesn't count towards the event
+class EdtWatchdog extends EventQueue {
+    static final boolean ENABLED = Boolean.getBoolean("todolist.edtWatchdog");
+    private static final long STALL_MS = Long.getLong("todolist.edtStallMs", 200);
+    private static final LatencyHistogram DISPATCH_LATENCY = Metrics.latency("edt.dispatch");
+    private static final AtomicLong STALLS = Metrics.counter("edt.stalls");
+
+    private static volatile EdtWatchdog installed;
+
+    // One event being dispatched. Fields are written on the EDT and read by the sampler
+    private static class Dispatch {
+        final AWTEvent event;
+        final Dispatch outer;
+        volatile long runningSince; // nanoTime this dispatch last resumed running, or 0 while it is paused
+        volatile long activeNanos; // Running time before runningSince
+        volatile String action;
+        volatile StackTraceElement[] stack;
+
+        Dispatch(AWTEvent event, Dispatch outer, long now) {
+            this.event = event;
+            this.outer = outer;
+            this.runningSince = now;
+        }
+
+        void pause(long now) {
+            if (runningSince != 0) activeNanos += now - runningSince;
+            runningSince = 0;
+        }
+
+        void resume(long now) {
+            runningSince = now;
+        }
+
+        long activeNanos(long now) {
+            long since = runningSince;
+            return activeNanos + (since == 0 ? 0 : now - since);
+        }
+    }
+
+    private volatile Thread dispatchThread;
+    private volatile Dispatch current;
+    private final Logger stallLog = Logger.getLogger(EdtWatchdog.class.getName());
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "edt-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private EdtWatchdog() throws IOException {
+        FileHandler handler = new FileHandler("edt-stalls.%g.log", 1 << 20, 3, true);
+        handler.setFormatter(new SimpleFormatter());
+        stallLog.setUseParentHandlers(false);
+        stallLog.addHandler(handler);
+        long interval = Math.max(STALL_MS / 4, 10);
+        sampler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Push the watchdog onto the system event queue, if it is enabled
+    static void install() {
+        if (!ENABLED || installed != null) return;
+        try {
+            installed = new EdtWatchdog();
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+    }
+
+    // Name the user action the current event is performing, for stall reports. Call on the EDT; cheap when disabled
+    static void action(String name) {
+        EdtWatchdog watchdog = installed;
+        if (watchdog == null) return;
+        Dispatch dispatch = watchdog.current;
+        if (dispatch != null && dispatch.action == null) dispatch.action = name;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        Dispatch outer = current;
+        if (outer != null) outer.pause(start);
+        else dispatchThread = Thread.currentThread();
+        Dispatch dispatch = new Dispatch(event, outer, start);
+        current = dispatch;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long end = System.nanoTime();
+            current = outer;
+            if (outer != null) outer.resume(end);
+            long active = dispatch.activeNanos(end);
+            DISPATCH_LATENCY.record(active);
+            if (active >= TimeUnit.MILLISECONDS.toNanos(STALL_MS)) report(dispatch, active);
+        }
+    }
+
+    // A modal dialog's loop waits for events in here; that wait isn't the outer event's running time
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+        Dispatch waiting = current;
+        if (waiting != null) waiting.pause(System.nanoTime());
+        try {
+            return super.getNextEvent();
+        } finally {
+            if (waiting != null) waiting.resume(System.nanoTime());
+        }
+    }
+
+    // Runs on the sampler thread
+    private void sample() {
+        Dispatch dispatch = current;
+        Thread edt = dispatchThread;
+        if (dispatch == null || edt == null || dispatch.stack != null) return;
+        if (dispatch.activeNanos(System.nanoTime()) >= TimeUnit.MILLISECONDS.toNanos(STALL_MS)) dispatch.stack = edt.getStackTrace();
+    }
+
+    // The log write is handed to the sampler thread, keeping file I/O off the EDT
+    private void report(Dispatch dispatch, long activeNanos) {
+        STALLS.incrementAndGet();
+        String action = dispatch.action;
+        for (Dispatch outer = dispatch.outer; action == null && outer != null; outer = outer.outer) action = outer.action;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("EDT stalled %d ms in %s from %s (action: %s)", TimeUnit.NANOSECONDS.toMillis(activeNanos),
+            dispatch.event.getClass().getSimpleName(), dispatch.event.getSource().getClass().getSimpleName(),
+            action == null ? "unknown" : action));
+        StackTraceElement[] stack = dispatch.stack;
+        if (stack == null) report.append("\n\t(finished before the stack could be sampled)");
+        else for (StackTraceElement frame : stack) report.append("\n\tat ").append(frame);
+        String message = report.toString();
+        sampler.execute(() -> stallLog.logp(Level.WARNING, EdtWatchdog.class.getName(), "dispatchEvent", message));
+    }
+}
@@ -0,0 +1,31 @@
+import java.time.LocalDate;
+
+// Options for filtering tasks
+public class FilterOptions {
+    public boolean showComplete = true;
+    public boolean showIncomplete = true;
+    public boolean clearSelection = true;
+    public LocalDate date = null;
+    public String priority = null;
+    public String text = null; // Words the task text must contain, each matched as a word prefix
+
+    public FilterOptions() { }
+    public FilterOptions(LocalDate date) {
+        this.date = date;
+        this.clearSelection = false;
+    }
+    public FilterOptions(boolean showComplete, boolean showIncomplete) {
+        this.showComplete = showComplete;
+        this.showIncomplete = showIncomplete;
+    }
+    public FilterOptions(LocalDate date, String priority){
+        this.date = date;
+        this.priority = priority;
+        this.clearSelection = false;
+    }
+
+    // Whether every task passes this filter
+    boolean matchesAll() {
+        return showComplete && showIncomplete && date == null && priority == null && (text == null || text.trim().isEmpty());
+    }
+}
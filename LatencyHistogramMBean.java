@@ -0,0 +1,9 @@
+// JMX view of a LatencyHistogram
+public interface LatencyHistogramMBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP99Micros();
+    double getMaxMicros();
+    void reset();
+}
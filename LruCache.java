@@ -0,0 +1,57 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Size-bounded cache that drops the least recently used entry, counting hits and misses for diagnostics
+class LruCache<K, V> {
+    private final String name;
+    private final LinkedHashMap<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    LruCache(String name, int capacity) {
+        this.name = name;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= capacity) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    // The cached value, or the loader's value for key (which is then cached)
+    synchronized V get(K key, Function<K, V> loader) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        value = loader.apply(key);
+        entries.put(key, value);
+        return value;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+    long getEvictions() { return evictions.get(); }
+
+    @Override
+    public String toString() {
+        long total = hits.get() + misses.get();
+        return String.format("%s: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries",
+            name, hits.get(), misses.get(), total == 0 ? 0.0 : hits.get() * 100.0 / total, evictions.get(), size());
+    }
+}
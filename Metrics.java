@@ -0,0 +1,108 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Process-wide latency histograms and counters for the hot paths. Each histogram is published over JMX as
+// todolist:type=Latency,name=<name>, the counters as todolist:type=Metrics, and every recording is also a
+// TaskOperationEvent when JFR is recording
+final class Metrics {
+    private static final Map<String, LatencyHistogram> LATENCIES = new ConcurrentSkipListMap<>();
+    private static final Map<String, AtomicLong> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final AtomicLong ERRORS = counter("errors");
+
+    static {
+        register("todolist:type=Metrics", new StandardMBean(new MetricsMBean() {
+            @Override
+            public String[] getCounters() {
+                List<String> counters = new ArrayList<>();
+                for (Map.Entry<String, AtomicLong> counter : COUNTERS.entrySet()) counters.add(counter.getKey() + "=" + counter.getValue().get());
+                return counters.toArray(new String[0]);
+            }
+
+            @Override
+            public String getReport() {
+                return report();
+            }
+
+            @Override
+            public void reset() {
+                for (LatencyHistogram histogram : LATENCIES.values()) histogram.reset();
+                for (AtomicLong counter : COUNTERS.values()) counter.set(0);
+            }
+        }, MetricsMBean.class, false));
+    }
+
+    private Metrics() { }
+
+    // The histogram with this name, created (and registered with JMX) on first use
+    static LatencyHistogram latency(String name) {
+        return LATENCIES.computeIfAbsent(name, key -> {
+            LatencyHistogram histogram = new LatencyHistogram(key);
+            register("todolist:type=Latency,name=" + key, new StandardMBean(histogram, LatencyHistogramMBean.class, false));
+            return histogram;
+        });
+    }
+
+    static AtomicLong counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    // Count an error, then print it as before
+    static void error(Exception e) {
+        ERRORS.incrementAndGet();
+        e.printStackTrace(System.err);
+    }
+
+    // Record the time since startNanos (from System.nanoTime) in the histogram
+    static void record(LatencyHistogram histogram, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        histogram.record(nanos);
+        TaskOperationEvent event = new TaskOperationEvent();
+        if (event.shouldCommit()) {
+            event.operation = histogram.name;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    static Map<String, LatencyHistogram> latencies() {
+        return Collections.unmodifiableMap(LATENCIES);
+    }
+
+    static Map<String, AtomicLong> counters() {
+        return Collections.unmodifiableMap(COUNTERS);
+    }
+
+    // Table of every histogram and counter
+    static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %10s %12s %12s %12s%n", "latency", "count", "p50 us", "p99 us", "max us"));
+        for (LatencyHistogram histogram : LATENCIES.values()) {
+            report.append(String.format("%-24s %10d %12.1f %12.1f %12.1f%n", histogram.name, histogram.getCount(),
+                histogram.getP50Micros(), histogram.getP99Micros(), histogram.getMaxMicros()));
+        }
+        report.append(String.format("%n%-24s %10s%n", "counter", "value"));
+        for (Map.Entry<String, AtomicLong> counter : COUNTERS.entrySet()) {
+            report.append(String.format("%-24s %10d%n", counter.getKey(), counter.getValue().get()));
+        }
+        return report.toString();
+    }
+
+    private static void register(String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) server.registerMBean(bean, objectName);
+        } catch (JMException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+}
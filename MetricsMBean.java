@@ -0,0 +1,8 @@
+// JMX view of the counters in Metrics
+public interface MetricsMBean {
+    // One "name=value" entry per counter
+    String[] getCounters();
+    // The same text the diagnostics dialog shows
+    String getReport();
+    void reset();
+}
@@ -0,0 +1,188 @@
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+// Tasks as objects, in an ArrayList kept in Task.ORDER. A changed task is found and placed by binary search, O(log n),
+// plus shifting the tasks after it (one arraycopy). A task is known by identity, and its id is -1 once removed. Until
+// sort() after tasks were added or changed with sortLater, tasks are found by scanning instead
+class ObjectTaskList implements TaskList {
+    private final ArrayList<Task> tasks = new ArrayList<>();
+    private final List<Task> tasksById = new ArrayList<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    // Task.position is only up to date for tasks before this index. Renumbering after every change would touch every
+    // later task, so it is left to the filtered views that need it; readers synchronize on tasks to do it
+    private int positionsValidTo = 0;
+    private boolean unsorted; // Tasks added or changed with sortLater since the last sort()
+
+    @Override
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public Task get(int position) {
+        return tasks.get(position);
+    }
+
+    @Override
+    public Task byId(int id) {
+        return tasksById.get(id);
+    }
+
+    @Override
+    public Task current(Task task) {
+        int id = task.id;
+        return id >= 0 && id < tasksById.size() && tasksById.get(id) == task ? task : null;
+    }
+
+    @Override
+    public int add(Task task, boolean sortLater) {
+        Integer freeId = freeIds.poll();
+        int id = freeId != null ? freeId : tasksById.size();
+        if (freeId != null) tasksById.set(id, task);
+        else tasksById.add(task);
+        task.id = id;
+
+        if (sortLater) {
+            tasks.add(task);
+            unsorted = true;
+        } else {
+            int position = insertionPoint(task);
+            tasks.add(position, task);
+            positionsValidTo = Math.min(positionsValidTo, position);
+        }
+        return id;
+    }
+
+    @Override
+    public void removeAll(Collection<Task> removed) {
+        if (removed.isEmpty()) return;
+        int first = 0;
+        if (!unsorted) {
+            first = tasks.size();
+            for (Task task : removed) first = Math.min(first, indexOf(task));
+        }
+        if (removed.size() == 1 && !unsorted) {
+            tasks.remove(first);
+        } else {
+            Set<Task> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+            removing.addAll(removed);
+            tasks.removeIf(removing::contains);
+        }
+        positionsValidTo = Math.min(positionsValidTo, first);
+        for (Task task : removed) {
+            tasksById.set(task.id, null);
+            freeIds.push(task.id);
+            task.id = -1;
+        }
+    }
+
+    @Override
+    public void setCompleted(Task task, boolean completed, boolean sortLater) {
+        if (sortLater) {
+            task.setCompleted(completed);
+            unsorted = true;
+            return;
+        }
+        // Take it out while its completed flag still matches its place, then slot it back in
+        int from = indexOf(task);
+        tasks.remove(from);
+        task.setCompleted(completed);
+        int to = insertionPoint(task);
+        tasks.add(to, task);
+        positionsValidTo = Math.min(positionsValidTo, Math.min(from, to));
+    }
+
+    @Override
+    public void sort() {
+        Collections.sort(tasks, Task.ORDER);
+        positionsValidTo = 0;
+        unsorted = false;
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        Task[] copy = tasks.toArray(new Task[0]);
+        BitSet completed = new BitSet(copy.length);
+        for (int i = 0; i < copy.length; i++) completed.set(i, copy[i].isCompleted());
+        return new Tasks(copy, completed);
+    }
+
+    @Override
+    public int[] positionsOf(BitSet ids) {
+        synchronized (tasks) {
+            for (int i = positionsValidTo; i < tasks.size(); i++) tasks.get(i).position = i;
+            positionsValidTo = tasks.size();
+        }
+        // Marking positions in a bitset puts them in order without sorting
+        BitSet positions = new BitSet(tasks.size());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) positions.set(tasksById.get(id).position);
+        return positions.stream().toArray();
+    }
+
+    @Override
+    public void trimToSize() {
+        tasks.trimToSize();
+    }
+
+    // Index of the first task that sorts after this one
+    private int insertionPoint(Task task) {
+        int low = 0, high = tasks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Task.ORDER.compare(tasks.get(middle), task) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Where the task is in tasks, or -1 if it isn't there
+    private int indexOf(Task task) {
+        if (unsorted) {
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i) == task) return i;
+            }
+            return -1;
+        }
+        // Search back through the run of tasks that sort equal to it
+        for (int i = insertionPoint(task) - 1; i >= 0 && Task.ORDER.compare(tasks.get(i), task) == 0; i--) {
+            if (tasks.get(i) == task) return i;
+        }
+        return -1;
+    }
+
+    // A snapshot: the tasks in sorted order and which of them were completed then
+    static class Tasks extends AbstractList<Task> implements Snapshot, RandomAccess {
+        static final Tasks EMPTY = new Tasks(new Task[0], new BitSet());
+
+        private final Task[] tasks;
+        private final BitSet completed;
+
+        Tasks(Task[] tasks, BitSet completed) {
+            this.tasks = tasks;
+            this.completed = completed;
+        }
+
+        @Override
+        public int size() {
+            return tasks.length;
+        }
+
+        @Override
+        public Task get(int index) {
+            return tasks[index];
+        }
+
+        @Override
+        public boolean wasCompleted(int position) {
+            return completed.get(position);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+// How a recurring task repeats: daily, weekly or monthly from its due day, optionally until an end day. The days of
+// completed occurrences are all that is kept per occurrence, so a recurring task stays one record however long it runs.
+// Stored as the last field of the task's line, e.g. WEEKLY;until=2025-06-30;done=2024-10-04,2024-10-11
+class Recurrence {
+    enum Frequency { DAILY, WEEKLY, MONTHLY }
+
+    static final int NO_END = Integer.MAX_VALUE;
+
+    final Frequency frequency;
+    final int untilDay; // Last day an occurrence can fall on, or NO_END
+    private final TreeSet<Integer> completedDays = new TreeSet<>(); // Changed under TaskRepository's lock
+
+    Recurrence(Frequency frequency, int untilDay) {
+        this.frequency = frequency;
+        this.untilDay = untilDay;
+    }
+
+    Recurrence copy() {
+        Recurrence copy = new Recurrence(frequency, untilDay);
+        copy.completedDays.addAll(completedDays);
+        return copy;
+    }
+
+    // The days from firstDay to lastDay (inclusive) that a task first due on startDay falls due, in order
+    List<Integer> occurrences(int startDay, int firstDay, int lastDay) {
+        List<Integer> days = new ArrayList<>();
+        int from = Math.max(firstDay, startDay);
+        int to = Math.min(lastDay, untilDay);
+        if (from > to) return days;
+
+        switch (frequency) {
+            case DAILY:
+                for (int day = from; day <= to; day++) days.add(day);
+                break;
+            case WEEKLY:
+                for (int day = from + Math.floorMod(startDay - from, 7); day <= to; day += 7) days.add(day);
+                break;
+            case MONTHLY:
+                int dayOfMonth = LocalDate.ofEpochDay(startDay).getDayOfMonth();
+                YearMonth last = YearMonth.from(LocalDate.ofEpochDay(to));
+                for (YearMonth month = YearMonth.from(LocalDate.ofEpochDay(from)); !month.isAfter(last); month = month.plusMonths(1)) {
+                    // A task due on the 31st falls on the last day of shorter months
+                    int day = (int) month.atDay(Math.min(dayOfMonth, month.lengthOfMonth())).toEpochDay();
+                    if (day >= from && day <= to) days.add(day);
+                }
+                break;
+        }
+        return days;
+    }
+
+    boolean isCompleted(int day) {
+        return completedDays.contains(day);
+    }
+
+    void setCompleted(int day, boolean completed) {
+        if (completed) completedDays.add(day);
+        else completedDays.remove(day);
+    }
+
+    String encode() {
+        StringBuilder encoded = new StringBuilder(frequency.name());
+        if (untilDay != NO_END) encoded.append(";until=").append(LocalDate.ofEpochDay(untilDay));
+        String separator = ";done=";
+        for (int day : completedDays) {
+            encoded.append(separator).append(LocalDate.ofEpochDay(day));
+            separator = ",";
+        }
+        return encoded.toString();
+    }
+
+    // Throws IllegalArgumentException or DateTimeException if it isn't a recurrence
+    static Recurrence parse(String encoded) {
+        String[] parts = encoded.split(";");
+        Frequency frequency = Frequency.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+        int untilDay = NO_END;
+        List<Integer> completedDays = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("until=")) {
+                untilDay = parseDay(parts[i].substring("until=".length()));
+            } else if (parts[i].startsWith("done=")) {
+                for (String day : parts[i].substring("done=".length()).split(",")) completedDays.add(parseDay(day));
+            }
+        }
+
+        Recurrence recurrence = new Recurrence(frequency, untilDay);
+        recurrence.completedDays.addAll(completedDays);
+        return recurrence;
+    }
+
+    private static int parseDay(String date) throws DateTimeException {
+        return (int) LocalDate.parse(date.trim()).toEpochDay();
+    }
+}
@@ -0,0 +1,160 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Reminds about incomplete tasks on the day they fall due, at the reminder time (-Dtodolist.reminderTime, 09:00 by
+// default). Nothing is rescanned: the task index already keeps the tasks due each day, updated as tasks are added,
+// removed and completed, so a wake-up looks up only the days that have come due and then sleeps until the next
+// reminder time. A task added for a day already reminded of is reminded of at the next check, which a change to the
+// repository brings forward to right away. The clock is passed in, so a SimulatedClock can drive fireDue() directly
+class ReminderScheduler {
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("todolist.reminders"));
+    static final LocalTime REMINDER_TIME = LocalTime.parse(System.getProperty("todolist.reminderTime", "09:00"));
+    // Wake at least this often anyway, in case the system clock or time zone changes
+    private static final long MAX_SLEEP_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final LatencyHistogram CHECK_LATENCY = Metrics.latency("reminders.check");
+    private static final AtomicLong FIRED = Metrics.counter("reminders.fired");
+
+    private final TaskRepository repository;
+    private final Clock clock;
+    private final LocalTime reminderTime;
+    private final Consumer<List<Task>> listener;
+    private ScheduledExecutorService timer;
+    private int lastRemindedDay; // Guarded by this
+    // Uids of the tasks reminded of on lastRemindedDay, once it has been reminded of (guarded by this). An occurrence
+    // shares its rule's uid, but there is at most one a day
+    private final Set<Long> remindedUids = new HashSet<>();
+    private boolean lastDayReminded;
+    private final AtomicBoolean checkQueued = new AtomicBoolean();
+
+    // The listener is called on the timer thread with each batch of tasks that came due
+    ReminderScheduler(TaskRepository repository, Clock clock, LocalTime reminderTime, Consumer<List<Task>> listener) {
+        this.repository = repository;
+        this.clock = clock;
+        this.reminderTime = reminderTime;
+        this.listener = listener;
+        // Today's reminders still go out if the reminder time has passed by the first check; earlier days' don't
+        this.lastRemindedDay = (int) LocalDate.now(clock).toEpochDay() - 1;
+    }
+
+    void start() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tasks-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = executor;
+        executor.execute(this::tick);
+        repository.addListener(this::tasksChanged);
+    }
+
+    // A task may have been added for a day already reminded of, so check again on the timer thread. Changes made
+    // while a check is queued share it
+    private void tasksChanged() {
+        if (!checkQueued.compareAndSet(false, true)) return;
+        try {
+            timer.execute(() -> {
+                checkQueued.set(false);
+                try {
+                    fireDue();
+                } catch (RuntimeException e) {
+                    Metrics.error(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stop() was called
+        }
+    }
+
+    void stop() {
+        if (timer != null) timer.shutdownNow();
+    }
+
+    private void tick() {
+        try {
+            fireDue();
+        } catch (RuntimeException e) {
+            Metrics.error(e);
+        }
+        try {
+            timer.schedule(this::tick, Math.min(millisUntilNextReminder(), MAX_SLEEP_MS), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stop() was called
+        }
+    }
+
+    // Remind about the tasks of every day that has come due since the last call, and any added since then for the
+    // last day reminded of, and return them
+    synchronized List<Task> fireDue() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDate through = now.toLocalTime().isBefore(reminderTime) ? now.toLocalDate().minusDays(1) : now.toLocalDate();
+        List<Task> due = new ArrayList<>();
+        if (lastDayReminded) {
+            for (Task task : repository.incompleteDueOn(lastRemindedDay)) {
+                if (remindedUids.add(task.getUid())) due.add(task);
+            }
+        }
+        // A clock set back doesn't repeat reminders
+        if (through.toEpochDay() > lastRemindedDay) {
+            remindedUids.clear();
+            for (int day = lastRemindedDay + 1; day <= through.toEpochDay(); day++) {
+                List<Task> dueOnDay = repository.incompleteDueOn(day);
+                due.addAll(dueOnDay);
+                if (day == through.toEpochDay()) for (Task task : dueOnDay) remindedUids.add(task.getUid());
+            }
+            lastRemindedDay = (int) through.toEpochDay();
+            lastDayReminded = true;
+        }
+        Metrics.record(CHECK_LATENCY, start);
+
+        if (!due.isEmpty()) {
+            FIRED.addAndGet(due.size());
+            listener.accept(due);
+        }
+        return due;
+    }
+
+    private long millisUntilNextReminder() {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        ZonedDateTime next = now.with(reminderTime);
+        if (!next.isAfter(now)) next = next.plusDays(1).with(reminderTime);
+        return Math.max(Duration.between(now, next).toMillis(), 1);
+    }
+
+    // A clock that only moves when told to, for driving the scheduler deterministically
+    static class SimulatedClock extends Clock {
+        private final ZoneId zone;
+        private volatile Instant now;
+
+        SimulatedClock(Instant start, ZoneId zone) {
+            this.now = start;
+            this.zone = zone;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override public ZoneId getZone() { return zone; }
+        @Override public Clock withZone(ZoneId zone) { return new SimulatedClock(now, zone); }
+        @Override public Instant instant() { return now; }
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Tasks split by due month into one BinaryTaskStore file per month (tasks.d/2024-03.bin), so a month can be
+// read or rewritten without touching the rest. tasks.d/index lists each month's file with its task count,
+// one yyyy-MM|count line per month. Recurring tasks belong to every month they fall in, so they are kept apart in
+// tasks.d/recurring.dat, in the same binary format
+class SegmentedTaskStore {
+    static final String DIRECTORY = "tasks.d";
+    private static final String INDEX_FILE = "index";
+    private static final String RECURRING_FILE = "recurring.dat";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final TreeMap<YearMonth, Integer> counts = new TreeMap<>(); // Guarded by this
+
+    SegmentedTaskStore(Path directory) {
+        this.directory = directory;
+    }
+
+    boolean exists() {
+        return Files.isDirectory(directory);
+    }
+
+    // Read the index, or rebuild it from the segment headers if it is missing or unreadable
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        counts.clear();
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            try {
+                for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                    String[] parts = line.split("\\|");
+                    if (parts.length == 2) counts.put(YearMonth.parse(parts[0]), Integer.parseInt(parts[1]));
+                }
+                return;
+            } catch (DateTimeParseException | NumberFormatException e) {
+                Metrics.error(e);
+                counts.clear();
+            }
+        }
+
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                try {
+                    counts.put(YearMonth.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), readCount(segment));
+                } catch (DateTimeParseException e) {
+                    Metrics.error(e);
+                }
+            }
+        }
+        writeIndex();
+    }
+
+    // Tasks in the month's segment, or none if it has no segment
+    List<Task> read(YearMonth month) throws IOException {
+        Path segment = segment(month);
+        if (!Files.exists(segment)) return new ArrayList<>();
+        return BinaryTaskStore.read(segment).tasks;
+    }
+
+    // Replace the month's segment with these tasks, deleting it when there are none
+    void write(YearMonth month, List<Task> tasks) throws IOException {
+        Path segment = segment(month);
+        if (tasks.isEmpty()) Files.deleteIfExists(segment);
+        else BinaryTaskStore.write(segment, tasks, 0);
+
+        synchronized (this) {
+            if (tasks.isEmpty()) counts.remove(month);
+            else counts.put(month, tasks.size());
+            writeIndex();
+        }
+    }
+
+    List<Task> readRecurring() throws IOException {
+        Path file = directory.resolve(RECURRING_FILE);
+        if (!Files.exists(file)) return new ArrayList<>();
+        return BinaryTaskStore.read(file).tasks;
+    }
+
+    void writeRecurring(List<Task> tasks) throws IOException {
+        BinaryTaskStore.write(directory.resolve(RECURRING_FILE), tasks, 0);
+    }
+
+    // Number of tasks stored for the month
+    synchronized int count(YearMonth month) {
+        return counts.getOrDefault(month, 0);
+    }
+
+    synchronized int totalCount() {
+        int total = 0;
+        for (int count : counts.values()) total += count;
+        return total;
+    }
+
+    static YearMonth monthOf(int epochDay) {
+        return YearMonth.from(LocalDate.ofEpochDay(epochDay));
+    }
+
+    private Path segment(YearMonth month) {
+        return directory.resolve(month + SEGMENT_SUFFIX);
+    }
+
+    // Call while holding this
+    private void writeIndex() throws IOException {
+        List<String> lines = new ArrayList<>(counts.size());
+        for (Map.Entry<YearMonth, Integer> entry : counts.entrySet()) lines.add(entry.getKey() + "|" + entry.getValue());
+        Path index = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Task count from a segment's header, without reading the tasks
+    private static int readCount(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BinaryTaskStore.HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < BinaryTaskStore.HEADER_BYTES || header.getInt() != BinaryTaskStore.MAGIC) {
+                throw new IOException(segment + " is not a binary task file");
+            }
+            return header.getInt(16);
+        }
+    }
+}
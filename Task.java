@@ -0,0 +1,73 @@
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Data for each task
+public class Task {
+    static final String[] PRIORITIES = {"Low", "Medium", "High"};
+
+    // Incomplete tasks first, then by due date
+    static final Comparator<Task> ORDER = (Task t1, Task t2) -> {
+        if (t1.isCompleted() != t2.isCompleted())
+            return t1.isCompleted() ? 1 : -1;
+        else
+            return Integer.compare(t1.dueDay, t2.dueDay);
+    };
+
+    public final String text;
+    private volatile boolean completed; // Read by other threads through TaskRepository snapshots
+    private final int dueDay; // Days since 1970-01-01
+    private String priority;
+    private final long uid; // Identifies the task across saves and across processes sharing the task file
+    private final Recurrence recurrence; // How a recurring task repeats from dueDay; null for a one-off task
+    private Task series; // For an occurrence of a recurring task, the recurring task
+
+    public Task(String text, boolean completed, int dueDay, String priority) {
+        this(text, completed, dueDay, priority, newUid());
+    }
+
+    Task(String text, boolean completed, int dueDay, String priority, long uid) {
+        this(text, completed, dueDay, priority, uid, null);
+    }
+
+    Task(String text, boolean completed, int dueDay, String priority, long uid, Recurrence recurrence) {
+        this.text = text;
+        this.completed = completed;
+        this.dueDay = dueDay;
+        this.priority = priority;
+        this.uid = uid;
+        this.recurrence = recurrence;
+    }
+
+    public String getText() { return text; }
+    public boolean isCompleted() { return completed; }
+    public int getDueDay() { return dueDay; }
+    public LocalDate getDueDate() { return LocalDate.ofEpochDay(dueDay); }
+    public String getPriority() { return priority; }
+    public long getUid() { return uid; }
+    Recurrence getRecurrence() { return recurrence; }
+    Task getSeries() { return series; }
+
+    // The occurrence of this recurring task on a day. It shares the uid, and is completed if that day's occurrence is
+    Task occurrence(int day) {
+        Task occurrence = new Task(text, recurrence.isCompleted(day), day, priority, uid);
+        occurrence.series = this;
+        return occurrence;
+    }
+
+    // A copy that can be written out while this one keeps changing
+    Task copy() {
+        return new Task(text, completed, dueDay, priority, uid, recurrence == null ? null : recurrence.copy());
+    }
+
+    // Random, so processes sharing a task file can create tasks without coordinating
+    static long newUid() { return ThreadLocalRandom.current().nextLong(); }
+
+    // Changed through TaskRepository.setCompleted, which keeps its order and indexes in step
+    void setCompleted(boolean completed) { this.completed = completed; }
+
+    // Bookkeeping for the TaskList the task is in, and TaskIndex: the id it gives the task (-1 when not in one), and
+    // the task's place in ObjectTaskList
+    int id = -1;
+    int position;
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Load test for TaskApiServer: serves a generated task list from a temp directory on a loopback port, and has client
+// threads in this process send a mix of filtered reads and adds/toggles for a fixed time. Prints requests/sec and
+// latency percentiles as the clients saw them, then the server's own histograms.
+//
+// Usage: java TaskApiLoadTest [--tasks 100000] [--clients 16] [--seconds 10] [--writes <percent of requests>]
+public class TaskApiLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int taskCount = 100_000;
+        int clients = 16;
+        int seconds = 10;
+        int writePercent = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--tasks")) taskCount = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--clients")) clients = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--seconds")) seconds = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--writes")) writePercent = Integer.parseInt(args[i + 1]);
+        }
+
+        Path dir = Files.createTempDirectory("task-api-load");
+        try {
+            TextTaskStore.write(dir.resolve("tasks.txt"), TaskEngineBenchmark.generateTasks(taskCount), 0);
+            TaskRepository repository = new TaskRepository(dir);
+            repository.load();
+            TaskApiServer server = new TaskApiServer(repository, 0);
+            server.start();
+            try {
+                run(repository, "http://127.0.0.1:" + server.getPort() + "/tasks", taskCount, clients, seconds, writePercent);
+            } finally {
+                server.stop();
+                repository.close();
+            }
+            System.out.println();
+            System.out.print(Metrics.report());
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    private static void run(TaskRepository repository, String base, int taskCount, int clients, int seconds, int writePercent) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        LatencyHistogram reads = new LatencyHistogram("client.read");
+        LatencyHistogram writes = new LatencyHistogram("client.write");
+        AtomicLong failures = new AtomicLong();
+        // Reads are the filters the UI offers. Generated texts are "Task <n> ...", so searching for a number below the
+        // task count matches a few tasks, keeping responses a realistic size
+        LocalDate firstDay = LocalDate.of(2020, 1, 1);
+        String[] priorities = Task.PRIORITIES;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    boolean write = random.nextInt(100) < writePercent;
+                    HttpRequest request;
+                    if (!write) {
+                        String query;
+                        switch (random.nextInt(3)) {
+                            case 0: query = "date=" + firstDay.plusDays(random.nextInt(365 * 8)); break;
+                            case 1: query = "date=" + firstDay.plusDays(random.nextInt(365 * 8)) + "&priority=" + priorities[random.nextInt(3)]; break;
+                            default: query = "q=" + random.nextInt(taskCount) + "&status=incomplete"; break;
+                        }
+                        request = HttpRequest.newBuilder(URI.create(base + "?" + query)).GET().build();
+                    } else if (random.nextBoolean()) {
+                        String body = "{\"text\": \"Load " + random.nextInt(1_000_000) + "\", \"due\": \""
+                            + firstDay.plusDays(random.nextInt(365 * 8)) + "\", \"priority\": \"" + priorities[random.nextInt(3)] + "\"}";
+                        request = HttpRequest.newBuilder(URI.create(base)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                    } else {
+                        List<Task> all = repository.snapshot();
+                        Task task = all.get(random.nextInt(all.size()));
+                        request = HttpRequest.newBuilder(URI.create(base + "/" + Long.toHexString(task.getUid()) + "/toggle"))
+                            .POST(HttpRequest.BodyPublishers.noBody()).build();
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() >= 400) failures.incrementAndGet();
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    (write ? writes : reads).record(System.nanoTime() - start);
+                }
+            }, "load-client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        long total = reads.getCount() + writes.getCount();
+        System.out.printf("%d clients, %d s, %d%% writes: %d requests, %.0f requests/sec, %d failed%n",
+            clients, seconds, writePercent, total, total / (double) seconds, failures.get());
+        System.out.printf("%-14s %10s %10s %10s %10s %10s%n", "client", "count", "p50 us", "p90 us", "p99 us", "max us");
+        for (LatencyHistogram histogram : new LatencyHistogram[] {reads, writes}) {
+            System.out.printf("%-14s %10d %10.1f %10.1f %10.1f %10.1f%n", histogram.name, histogram.getCount(),
+                histogram.valueAtPercentile(50) / 1e3, histogram.valueAtPercentile(90) / 1e3,
+                histogram.valueAtPercentile(99) / 1e3, histogram.getMaxMicros());
+        }
+    }
+}
@@ -0,0 +1,343 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Local HTTP/JSON access to the tasks, for scripts and other tools. Started with -Dtodolist.apiPort=<port>, and only
+// listens on the loopback address. Tasks are named by their uid in hex (and an occurrence of a recurring task also by
+// its due date):
+//
+//   GET    /tasks?status=complete|incomplete&priority=High&date=yyyy-MM-dd&q=words   the matching tasks, in list order
+//   POST   /tasks   {"text": "...", "due": "yyyy-MM-dd", "priority": "Low"}          add a task; returns it
+//   POST   /tasks/<uid>/toggle[?date=yyyy-MM-dd]                                      flip completed; returns the task
+//   DELETE /tasks/<uid>                                                               remove a task
+//
+// Requests run on virtual threads when the JDK has them, or else on a fixed pool. Unfiltered reads come straight from
+// the repository's snapshot without locking; filtered ones share its read lock with the UI, so never wait on each other
+class TaskApiServer {
+    static final int PORT = Integer.getInteger("todolist.apiPort", -1); // -1: no server
+    private static final int POOL_THREADS = Integer.getInteger("todolist.apiThreads", 4 * Runtime.getRuntime().availableProcessors());
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(TaskApiServer.class.getName());
+    private static final LatencyHistogram READ_LATENCY = Metrics.latency("api.read");
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.latency("api.write");
+    private static final AtomicLong CLIENT_ERRORS = Metrics.counter("api.clientErrors");
+
+    private final TaskRepository repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Status and message for a request that can't be served
+    private static class ApiException extends Exception {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Port 0 picks a free port
+    TaskApiServer(TaskRepository repository, int port) throws IOException {
+        // Without TCP_NODELAY, small responses wait out the client's delayed ACK, about 40 ms each. Read when the JDK's
+        // server is first created, so it has to be set before then
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.repository = repository;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/tasks", this::handle);
+    }
+
+    // One virtual thread per request on JDKs that have them (21+), looked up reflectively so this still builds on 17
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(POOL_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "tasks-api");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    void start() {
+        server.start();
+        LOGGER.info("Task API listening on http://" + server.getAddress().getHostString() + ":" + getPort() + "/tasks");
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Waits up to a second for requests in progress
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            // path[0] is empty and path[1] should be "tasks"
+            if (path.length < 2 || !path[1].equals("tasks") || path.length > 4) {
+                throw new ApiException(404, "No such resource " + exchange.getRequestURI().getPath());
+            } else if (path.length == 2 && method.equals("GET")) {
+                respond(exchange, 200, listTasks(query));
+            } else if (path.length == 2 && method.equals("POST")) {
+                respond(exchange, 201, toJson(addTask(parseObject(readBody(exchange)))));
+            } else if (path.length == 4 && path[3].equals("toggle") && method.equals("POST")) {
+                Task task = findTask(path[2], query.get("date"));
+                Task toggled = repository.setCompleted(task, !task.isCompleted());
+                if (toggled == null) throw new ApiException(404, "No such task");
+                respond(exchange, 200, toJson(toggled));
+            } else if (path.length == 3 && method.equals("DELETE")) {
+                if (!repository.remove(findTask(path[2], null))) throw new ApiException(404, "No such task");
+                respond(exchange, 204, null);
+            } else {
+                throw new ApiException(405, "Unsupported request " + method + " " + exchange.getRequestURI().getPath());
+            }
+        } catch (ApiException e) {
+            CLIENT_ERRORS.incrementAndGet();
+            respond(exchange, e.status, "{\"error\": " + quote(e.getMessage()) + "}");
+        } catch (RuntimeException e) {
+            Metrics.error(e);
+            respond(exchange, 500, "{\"error\": " + quote(String.valueOf(e)) + "}");
+        } finally {
+            exchange.close();
+            Metrics.record(method.equals("GET") ? READ_LATENCY : WRITE_LATENCY, start);
+        }
+    }
+
+    private String listTasks(Map<String, String> query) throws ApiException {
+        FilterOptions options = new FilterOptions();
+        String status = query.get("status");
+        if (status != null) {
+            if (!status.equals("complete") && !status.equals("incomplete")) throw new ApiException(400, "status must be complete or incomplete");
+            options = new FilterOptions(status.equals("complete"), status.equals("incomplete"));
+        }
+        options.priority = query.get("priority");
+        options.text = query.get("q");
+        if (query.containsKey("date")) options.date = parseDate(query.get("date"));
+
+        StringBuilder json = new StringBuilder("[");
+        if (options.matchesAll()) {
+            List<Task> all = repository.snapshot();
+            for (int i = 0; i < all.size(); i++) appendTask(json.append(i == 0 ? "\n" : ",\n"), all.get(i));
+        } else {
+            TaskRepository.View view = repository.view(options);
+            for (int i = 0; i < view.size(); i++) appendTask(json.append(i == 0 ? "\n" : ",\n"), view.get(i));
+        }
+        return json.append("\n]").toString();
+    }
+
+    private Task addTask(Map<String, String> fields) throws ApiException {
+        String text = fields.get("text");
+        if (text == null || text.trim().isEmpty()) throw new ApiException(400, "text is required");
+        if (text.indexOf('|') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            throw new ApiException(400, "text can't contain | or line breaks");
+        }
+        String priority = fields.getOrDefault("priority", "Low");
+        if (!Arrays.asList(Task.PRIORITIES).contains(priority)) throw new ApiException(400, "Unknown priority " + priority);
+        LocalDate due = fields.containsKey("due") ? parseDate(fields.get("due")) : LocalDate.now();
+
+        Task task = new Task(text, false, (int) due.toEpochDay(), priority);
+        repository.add(task);
+        return task;
+    }
+
+    // The task with the uid, or the occurrence on the date for a recurring task. Scans the snapshot, without locking
+    private Task findTask(String uidHex, String date) throws ApiException {
+        long uid;
+        try {
+            uid = Long.parseUnsignedLong(uidHex, 16);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Bad task uid " + uidHex);
+        }
+        int day = date == null ? Integer.MIN_VALUE : (int) parseDate(date).toEpochDay();
+        for (Task task : repository.snapshot()) {
+            if (task.getUid() == uid && (day == Integer.MIN_VALUE || task.getDueDay() == day)) return task;
+        }
+        throw new ApiException(404, "No such task");
+    }
+
+    private static LocalDate parseDate(String date) throws ApiException {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeException e) {
+            throw new ApiException(400, "Dates are yyyy-MM-dd, not " + date);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_BYTES) throw new ApiException(413, "Request body too large");
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return Collections.emptyMap();
+        Map<String, String> query = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) continue;
+            query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    static String toJson(Task task) {
+        return appendTask(new StringBuilder(), task).toString();
+    }
+
+    private static StringBuilder appendTask(StringBuilder json, Task task) {
+        json.append("{\"uid\": \"").append(Long.toHexString(task.getUid()))
+            .append("\", \"text\": ").append(quote(task.getText()))
+            .append(", \"completed\": ").append(task.isCompleted())
+            .append(", \"due\": \"").append(task.getDueDate())
+            .append("\", \"priority\": ").append(quote(task.getPriority()));
+        if (task.getSeries() != null) json.append(", \"recurring\": true");
+        return json.append('}');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') quoted.append('\\').append(c);
+            else if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+            else quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    // A flat JSON object of string, number, boolean and null values, as strings (null for null)
+    static Map<String, String> parseObject(String json) throws ApiException {
+        Map<String, String> fields = new HashMap<>();
+        int[] at = {skipSpace(json, 0)};
+        expect(json, at, '{');
+        if (peek(json, at) == '}') {
+            at[0]++;
+            return fields;
+        }
+        while (true) {
+            String key = parseString(json, at);
+            expect(json, at, ':');
+            fields.put(key, parseValue(json, at));
+            char next = peek(json, at);
+            at[0]++;
+            if (next == '}') break;
+            if (next != ',') throw new ApiException(400, "Expected , or } at " + (at[0] - 1));
+        }
+        if (skipSpace(json, at[0]) != json.length()) throw new ApiException(400, "Unexpected text after the object");
+        return fields;
+    }
+
+    private static String parseValue(String json, int[] at) throws ApiException {
+        if (peek(json, at) == '"') return parseString(json, at);
+        int start = at[0];
+        while (at[0] < json.length() && ",}".indexOf(json.charAt(at[0])) < 0 && !Character.isWhitespace(json.charAt(at[0]))) at[0]++;
+        String literal = json.substring(start, at[0]);
+        if (literal.equals("null")) return null;
+        if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) return literal;
+        throw new ApiException(400, "Bad value at " + start);
+    }
+
+    private static String parseString(String json, int[] at) throws ApiException {
+        expect(json, at, '"');
+        StringBuilder value = new StringBuilder();
+        while (at[0] < json.length()) {
+            char c = json.charAt(at[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (at[0] >= json.length()) break;
+            char escaped = json.charAt(at[0]++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 't': value.append('\t'); break;
+                case 'r': value.append('\r'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (at[0] + 4 > json.length()) throw new ApiException(400, "Bad escape at " + at[0]);
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(at[0], at[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new ApiException(400, "Bad escape at " + at[0]);
+                    }
+                    at[0] += 4;
+                    break;
+                default: value.append(escaped);
+            }
+        }
+        throw new ApiException(400, "Unterminated string");
+    }
+
+    // The next character that isn't white space, left unconsumed
+    private static char peek(String json, int[] at) throws ApiException {
+        at[0] = skipSpace(json, at[0]);
+        if (at[0] >= json.length()) throw new ApiException(400, "Unexpected end of JSON");
+        return json.charAt(at[0]);
+    }
+
+    private static void expect(String json, int[] at, char c) throws ApiException {
+        if (peek(json, at) != c) throw new ApiException(400, "Expected " + c + " at " + at[0]);
+        at[0]++;
+    }
+
+    private static int skipSpace(String json, int at) {
+        while (at < json.length() && Character.isWhitespace(json.charAt(at))) at++;
+        return at;
+    }
+}
@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tasks kept column by column instead of as objects: uids in a long[], due days in an int[], completed and priority
+// packed into a byte[], and the text as UTF-8 in an off-heap arena, found through an int[] of end offsets. That is
+// 17 bytes of heap per task against 100 and more for a Task and its String, and the text is never traced by the GC.
+// Task objects are only made for the rows asked for, as views of the row at that moment; changes go through the
+// columns. The arena holds up to 2 GB of text. Not thread-safe
+class TaskColumns {
+    private static final int COMPLETED = 0x80;
+    private static final int PRIORITY_MASK = 0x7f;
+    private static final int MIN_ROWS = 16;
+
+    private long[] uids;
+    private int[] dueDays;
+    private byte[] flags; // COMPLETED, and the priority as an index into priorities
+    private int[] textEnds; // Row r's text is arena[textEnds[r - 1], textEnds[r])
+    private ByteBuffer arena;
+    private final List<String> priorities = new ArrayList<>(Arrays.asList(Task.PRIORITIES));
+    private final Map<Integer, Recurrence> recurrences = new HashMap<>(); // By row; there are only ever a few
+    private int size;
+
+    TaskColumns(int expectedRows, int expectedTextBytes) {
+        int rows = Math.max(expectedRows, MIN_ROWS);
+        uids = new long[rows];
+        dueDays = new int[rows];
+        flags = new byte[rows];
+        textEnds = new int[rows];
+        arena = ByteBuffer.allocateDirect(Math.max(expectedTextBytes, 1024));
+    }
+
+    static TaskColumns of(List<Task> tasks) {
+        TaskColumns columns = new TaskColumns(tasks.size(), tasks.size() * 32);
+        for (Task task : tasks) columns.add(task);
+        return columns;
+    }
+
+    int add(Task task) {
+        return add(task.getUid(), task.getDueDay(), task.isCompleted(), task.getPriority(),
+            ByteBuffer.wrap(task.getText().getBytes(StandardCharsets.UTF_8)), task.getRecurrence());
+    }
+
+    // The text is the remaining bytes of text, which are consumed. Returns the new row
+    int add(long uid, int dueDay, boolean completed, String priority, ByteBuffer text, Recurrence recurrence) {
+        if (size == uids.length) {
+            int rows = size + (size >> 1);
+            uids = Arrays.copyOf(uids, rows);
+            dueDays = Arrays.copyOf(dueDays, rows);
+            flags = Arrays.copyOf(flags, rows);
+            textEnds = Arrays.copyOf(textEnds, rows);
+        }
+        ensureArena(text.remaining());
+
+        int row = size++;
+        uids[row] = uid;
+        dueDays[row] = dueDay;
+        flags[row] = (byte) ((completed ? COMPLETED : 0) | priorityIndex(priority));
+        arena.put(text);
+        textEnds[row] = arena.position();
+        if (recurrence != null) recurrences.put(row, recurrence);
+        return row;
+    }
+
+    int size() { return size; }
+    long getUid(int row) { return uids[row]; }
+    int getDueDay(int row) { return dueDays[row]; }
+    boolean isCompleted(int row) { return (flags[row] & COMPLETED) != 0; }
+    String getPriority(int row) { return priorities.get(flags[row] & PRIORITY_MASK); }
+    Recurrence getRecurrence(int row) { return recurrences.get(row); }
+
+    String getText(int row) {
+        int start = row == 0 ? 0 : textEnds[row - 1];
+        byte[] bytes = new byte[textEnds[row] - start];
+        arena.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Give a row added with no text to another task with no text. Other rows can't be reused, as their text stays
+    void reuse(int row, long uid, int dueDay, boolean completed, String priority) {
+        if (textEnds[row] != (row == 0 ? 0 : textEnds[row - 1])) throw new IllegalArgumentException("Row " + row + " has text");
+        uids[row] = uid;
+        dueDays[row] = dueDay;
+        flags[row] = (byte) ((completed ? COMPLETED : 0) | priorityIndex(priority));
+        recurrences.remove(row);
+    }
+
+    void setCompleted(int row, boolean completed) {
+        flags[row] = (byte) (completed ? flags[row] | COMPLETED : flags[row] & ~COMPLETED);
+    }
+
+    // A Task with the row's values. It is a copy: changing it doesn't change the row
+    Task get(int row) {
+        return new Task(getText(row), isCompleted(row), getDueDay(row), getPriority(row), getUid(row), getRecurrence(row));
+    }
+
+    // Give back the spare room left by growing, once all the rows are in
+    void trimToSize() {
+        int rows = Math.max(size, MIN_ROWS);
+        uids = Arrays.copyOf(uids, rows);
+        dueDays = Arrays.copyOf(dueDays, rows);
+        flags = Arrays.copyOf(flags, rows);
+        textEnds = Arrays.copyOf(textEnds, rows);
+        if (arena.capacity() > arena.position()) {
+            ByteBuffer trimmed = ByteBuffer.allocateDirect(Math.max(arena.position(), 1));
+            trimmed.put(arena.duplicate().flip());
+            arena = trimmed;
+        }
+    }
+
+    // Bytes held by the columns on the heap, not counting the few recurrences
+    long heapBytes() {
+        return (long) uids.length * Long.BYTES + (long) dueDays.length * Integer.BYTES + flags.length + (long) textEnds.length * Integer.BYTES;
+    }
+
+    long offHeapBytes() {
+        return arena.capacity();
+    }
+
+    private void ensureArena(int bytes) {
+        if (arena.remaining() >= bytes) return;
+        long needed = (long) arena.position() + bytes;
+        if (needed > Integer.MAX_VALUE) throw new IllegalStateException("More than 2 GB of task text");
+        ByteBuffer larger = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(needed, (long) arena.capacity() * 2)));
+        larger.put(arena.flip());
+        arena = larger;
+    }
+
+    // Priorities other than Task.PRIORITIES are added as they turn up; the flags byte has room for 128
+    private int priorityIndex(String priority) {
+        int index = priorities.indexOf(priority);
+        if (index >= 0) return index;
+        if (priorities.size() > PRIORITY_MASK) throw new IllegalStateException("More than " + (PRIORITY_MASK + 1) + " different priorities");
+        priorities.add(priority);
+        return priorities.size() - 1;
+    }
+}
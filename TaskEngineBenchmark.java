@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import javax.swing.JTable;
+
+// Benchmarks for the task engine's hot paths: load (whole file, one month, or into columns), save, sort (or reinsert
+// one task), filter, search, the calendar's per-day counts and the summary panel's counts, each run over task lists
+// from 1k to 1M tasks. Filter and search go through TaskRepository.view and the calendar through DayRenderer, on a
+// TaskRepository loaded from the generated tasks. The tasks are generated from a fixed seed, so numbers are comparable
+// between builds. The memory.* rows are instead the bytes per task of holding the loaded tasks as Task objects or as
+// TaskColumns, and of a whole TaskRepository (index included) as -Dtodolist.storage has it: the total, then how much of
+// it is on the heap. The other benchmarks run against that repository too, so running them with
+// -Dtodolist.storage=columns compares the storage modes.
+//
+// Usage: java TaskEngineBenchmark [--sizes 1000,10000,100000,1000000] [--only <name prefix>] [--iterations n]
+//        java TaskEngineBenchmark --generate <count> <file>     (writes a synthetic tasks.txt)
+//        java TaskEngineBenchmark --reminders <count>           (runs the reminder scheduler over the generated tasks'
+//                                                                 eight years on a simulated clock, checking each fires once,
+//                                                                 including tasks added for the day after its reminders)
+public class TaskEngineBenchmark {
+
+    private static final long ITERATION_NANOS = 100_000_000L;
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private interface Operation {
+        Object run() throws IOException;
+    }
+
+    // Results are folded in here so the JIT can't drop the work that produced them
+    private static volatile int sink;
+
+    private final List<Task> tasks;
+    private final Path textFile;
+    private final Path binaryFile;
+    private final SegmentedTaskStore segments;
+    private final Path repositoryDir;
+    private final TaskRepository repository;
+    private final int iterations;
+
+    private TaskEngineBenchmark(int taskCount, Path dir, int iterations) throws IOException {
+        this.tasks = generateTasks(taskCount);
+        this.textFile = dir.resolve("tasks-" + taskCount + ".txt");
+        this.binaryFile = dir.resolve("tasks-" + taskCount + ".bin");
+        this.segments = new SegmentedTaskStore(dir.resolve("tasks-" + taskCount + ".d"));
+        this.iterations = iterations;
+
+        TextTaskStore.write(textFile, tasks, 0);
+        BinaryTaskStore.write(binaryFile, tasks, 0);
+        segments.open();
+        Map<YearMonth, List<Task>> byMonth = new TreeMap<>();
+        for (Task task : tasks) byMonth.computeIfAbsent(SegmentedTaskStore.monthOf(task.getDueDay()), k -> new ArrayList<>()).add(task);
+        for (Map.Entry<YearMonth, List<Task>> month : byMonth.entrySet()) segments.write(month.getKey(), month.getValue());
+        tasks.sort(Task.ORDER);
+
+        repositoryDir = Files.createDirectory(dir.resolve("repository-" + taskCount));
+        TextTaskStore.write(repositoryDir.resolve(TaskRepository.TASKS_FILE), tasks, 0);
+        repository = new TaskRepository(repositoryDir);
+        repository.load();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--generate")) {
+            TextTaskStore.write(Paths.get(args[2]), generateTasks(Integer.parseInt(args[1])), 0);
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--reminders")) {
+            simulateReminders(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int[] sizes = {1_000, 10_000, 100_000, 1_000_000};
+        String only = "";
+        int iterations = 5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--sizes")) sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+            else if (args[i].equals("--only")) only = args[i + 1];
+            else if (args[i].equals("--iterations")) iterations = Integer.parseInt(args[i + 1]);
+        }
+
+        Path dir = Files.createTempDirectory("task-engine-benchmark");
+        System.out.printf("%-40s %10s %14s %12s%n", "benchmark", "tasks", "us/op", "+/- us");
+        try {
+            for (int size : sizes) {
+                TaskEngineBenchmark benchmark = new TaskEngineBenchmark(size, dir, iterations);
+                try {
+                    benchmark.runAll(only);
+                } finally {
+                    benchmark.repository.close();
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    private void runAll(String only) throws IOException {
+        // First, before the other benchmarks leave garbage behind
+        measureMemory(only, "memory.objects", () -> BinaryTaskStore.read(binaryFile).tasks);
+        measureMemory(only, "memory.columns", () -> BinaryTaskStore.readColumns(binaryFile));
+        TaskRepository[] measured = new TaskRepository[1];
+        measureMemory(only, TaskRepository.COLUMNAR_STORAGE ? "memory.repository.columns" : "memory.repository.objects", () -> {
+            measured[0] = new TaskRepository(repositoryDir);
+            measured[0].load();
+            return measured[0];
+        });
+        if (measured[0] != null) measured[0].close();
+
+        run(only, "load.text", () -> TextTaskStore.read(textFile).tasks.size());
+        run(only, "load.binary", () -> BinaryTaskStore.read(binaryFile).tasks.size());
+        run(only, "load.columns", () -> BinaryTaskStore.readColumns(binaryFile).size());
+        // What segmented format reads when the calendar moves to a month
+        YearMonth middleMonth = SegmentedTaskStore.monthOf(tasks.get(tasks.size() / 2).getDueDay());
+        run(only, "load.month", () -> segments.read(middleMonth).size());
+        run(only, "save.text", () -> {
+            TextTaskStore.write(textFile, tasks, 0);
+            return null;
+        });
+        run(only, "save.binary", () -> {
+            BinaryTaskStore.write(binaryFile, tasks, 0);
+            return null;
+        });
+
+        // Sorting an already sorted list is the common case after a single change
+        List<Task> shuffled = new ArrayList<>(tasks);
+        Collections.shuffle(shuffled, new Random(7));
+        run(only, "sort.sorted", () -> {
+            List<Task> copy = new ArrayList<>(tasks);
+            copy.sort(Task.ORDER);
+            return copy.get(0);
+        });
+        run(only, "sort.shuffled", () -> {
+            List<Task> copy = new ArrayList<>(shuffled);
+            copy.sort(Task.ORDER);
+            return copy.get(0);
+        });
+        // What TaskRepository does for one change instead of sorting: binary search for the place, then shift the list
+        List<Task> sorted = new ArrayList<>(tasks);
+        Task middle = tasks.get(tasks.size() / 2);
+        run(only, "sort.reinsert", () -> {
+            Task moved = sorted.remove(Collections.binarySearch(sorted, middle, Task.ORDER));
+            int at = Collections.binarySearch(sorted, moved, Task.ORDER);
+            sorted.add(at >= 0 ? at : -at - 1, moved);
+            return moved;
+        });
+
+        int busiestDay = tasks.get(tasks.size() / 2).getDueDay();
+        for (LocalDate date : new LocalDate[] {null, LocalDate.ofEpochDay(busiestDay)}) {
+            for (String priority : new String[] {null, "low", "medium", "high"}) {
+                for (int completion = 1; completion <= 3; completion++) {
+                    FilterOptions options = new FilterOptions(date, priority);
+                    options.showComplete = (completion & 1) != 0;
+                    options.showIncomplete = (completion & 2) != 0;
+                    String name = "filter." + (date == null ? "anyDay" : "oneDay") + "." + (priority == null ? "anyPriority" : priority)
+                        + "." + (completion == 3 ? "all" : completion == 1 ? "completed" : "incomplete");
+                    run(only, name, () -> filter(options));
+                }
+            }
+        }
+
+        // Search as you type: one filter per keystroke of a word from one task's text
+        String word = tasks.get(tasks.size() / 3).getText().split(" ")[2];
+        for (String[] search : new String[][] {{"prefix", "7"}, {"twoTerms", "task 12"}, {"word", word}}) {
+            FilterOptions options = new FilterOptions();
+            options.text = search[1];
+            run(only, "search." + search[0], () -> filter(options));
+        }
+        run(only, "search.typing", () -> {
+            int total = 0;
+            FilterOptions options = new FilterOptions();
+            for (int length = 1; length <= word.length(); length++) {
+                options.text = word.substring(0, length);
+                total += filter(options).size();
+            }
+            return total;
+        });
+
+        run(only, "sameDay.scan", () -> {
+            int matches = 0;
+            for (Task task : tasks) {
+                if (task.getDueDay() == busiestDay) matches++;
+            }
+            return matches;
+        });
+        // After a change the month grids are dropped, so the first cell counts the month again
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(busiestDay));
+        LruCache<YearMonth, TodoListApp.MonthGrid> monthGrids = new LruCache<>("Month grids", 24);
+        TodoListApp.DayRenderer renderer = new TodoListApp.DayRenderer(monthGrids, repository, () -> month);
+        JTable calendar = new JTable(6, 7);
+        run(only, "calendar.month", () -> {
+            monthGrids.clear();
+            return renderMonth(renderer, calendar);
+        });
+        run(only, "calendar.repaint", () -> renderMonth(renderer, calendar));
+
+        // The summary panel's counts, one core against all of them
+        LocalDate today = LocalDate.ofEpochDay(busiestDay);
+        run(only, "summary.sequential", () -> TaskSummary.of(tasks, today, false));
+        run(only, "summary.parallel", () -> TaskSummary.of(tasks, today, true));
+    }
+
+    private TaskRepository.View filter(FilterOptions options) {
+        return repository.view(options);
+    }
+
+    // All 42 cells of the calendar, as a repaint renders them
+    private static int renderMonth(TodoListApp.DayRenderer renderer, JTable calendar) {
+        int total = 0;
+        for (int cell = 0; cell < 42; cell++) {
+            renderer.getTableCellRendererComponent(calendar, null, false, false, cell / 7, cell % 7);
+            total += renderer.notifLabel.getText().length();
+        }
+        return total;
+    }
+
+    private void run(String only, String name, Operation operation) throws IOException {
+        if (!name.startsWith(only)) return;
+
+        double[] results = new double[iterations];
+        for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink += System.identityHashCode(operation.run());
+                ops++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ITERATION_NANOS);
+            if (i >= WARMUP_ITERATIONS) results[i - WARMUP_ITERATIONS] = elapsed / 1e3 / ops;
+        }
+
+        double mean = Arrays.stream(results).average().orElse(0);
+        double variance = Arrays.stream(results).map(r -> (r - mean) * (r - mean)).sum() / Math.max(iterations - 1, 1);
+        System.out.printf("%-40s %10d %14.3f %12.3f%n", name, tasks.size(), mean, Math.sqrt(variance));
+    }
+
+    // Heap and direct memory in use before and after loading, each after a full collection
+    private void measureMemory(String only, String name, Operation load) throws IOException {
+        if (!name.startsWith(only)) return;
+
+        long heapBefore = usedHeap();
+        long directBefore = usedDirectMemory();
+        Object loaded = load.run();
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirectMemory() - directBefore;
+        Reference.reachabilityFence(loaded);
+        System.out.printf("%-40s %10d %14.1f %12s%n", name, tasks.size(), (heap + direct) / (double) tasks.size(),
+            String.format("%.1f heap", heap / (double) tasks.size()));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirectMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        }
+        return 0;
+    }
+
+    // Step a simulated clock through the generated tasks' eight years, six hours at a time, while tasks are completed,
+    // removed and added along the way. Every task still incomplete when its day comes must be reminded of exactly once,
+    // on that day
+    private static void simulateReminders(int count) throws IOException {
+        Path dir = Files.createTempDirectory("task-reminders");
+        try {
+            TextTaskStore.write(dir.resolve("tasks.txt"), generateTasks(count), 0);
+            TaskRepository repository = new TaskRepository(dir);
+            repository.load();
+
+            LocalDate first = LocalDate.of(2020, 1, 1);
+            ReminderScheduler.SimulatedClock clock = new ReminderScheduler.SimulatedClock(first.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+            // By uid and day, since with columnar storage each read makes a new Task object
+            Map<String, Integer> reminded = new HashMap<>();
+            int[] wrongDay = {0};
+            ReminderScheduler scheduler = new ReminderScheduler(repository, clock, ReminderScheduler.REMINDER_TIME, due -> {
+                int today = (int) LocalDate.now(clock).toEpochDay();
+                for (Task task : due) {
+                    reminded.merge(task.getUid() + "@" + task.getDueDay(), 1, Integer::sum);
+                    if (task.getDueDay() != today) wrongDay[0]++;
+                }
+            });
+
+            Random random = new Random(11);
+            LatencyHistogram checks = new LatencyHistogram("fireDue");
+            int days = 365 * 8;
+            for (int step = 0; step < days * 4; step++) {
+                // Each simulated day, complete or remove a few tasks due later and add one due later
+                if (step % 4 == 0) {
+                    List<Task> all = repository.snapshot();
+                    for (int i = 0; i < 3; i++) {
+                        Task task = all.get(random.nextInt(all.size()));
+                        if (task.isCompleted() || task.getDueDay() <= LocalDate.now(clock).toEpochDay()) continue;
+                        if (random.nextBoolean()) repository.setCompleted(task, true);
+                        else repository.remove(task);
+                    }
+                    repository.add(new Task("Added " + step, false, (int) LocalDate.now(clock).toEpochDay() + 1 + random.nextInt(30), "Low"));
+                }
+                // And each afternoon, after the reminder time, add one due that day
+                if (step % 4 == 2) repository.add(new Task("Due today " + step, false, (int) LocalDate.now(clock).toEpochDay(), "High"));
+                long start = System.nanoTime();
+                scheduler.fireDue();
+                checks.record(System.nanoTime() - start);
+                clock.advance(Duration.ofHours(6));
+            }
+            repository.close();
+
+            Set<String> expected = new HashSet<>();
+            int lastDay = (int) first.toEpochDay() + days - 1;
+            for (Task task : repository.snapshot()) {
+                if (!task.isCompleted() && task.getDueDay() <= lastDay) expected.add(task.getUid() + "@" + task.getDueDay());
+            }
+            int missed = 0;
+            for (String task : expected) {
+                if (!reminded.containsKey(task)) missed++;
+            }
+            // Only tasks due later are completed or removed, so none of those should have been reminded of
+            int repeated = 0;
+            int stale = 0;
+            for (Map.Entry<String, Integer> entry : reminded.entrySet()) {
+                if (entry.getValue() > 1) repeated++;
+                if (!expected.contains(entry.getKey())) stale++;
+            }
+            System.out.printf("%d tasks, %d checks over %d days: %d reminded (%d expected), %d missed, %d repeated, %d completed or removed, %d on the wrong day%n",
+                count, days * 4, days, reminded.size(), expected.size(), missed, repeated, stale, wrongDay[0]);
+            System.out.printf("fireDue: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                checks.valueAtPercentile(50) / 1e3, checks.valueAtPercentile(99) / 1e3, checks.getMaxMicros());
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    // Same seed every run, so results are comparable between builds
+    static List<Task> generateTasks(int count) {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(
+                "Task " + i + " " + Long.toString(random.nextLong() & Long.MAX_VALUE, 36),
+                random.nextInt(4) == 0,
+                (int) start.toEpochDay() + random.nextInt(365 * 8),
+                Task.PRIORITIES[random.nextInt(Task.PRIORITIES.length)]));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+// Reads tasks for a bulk import. Files ending in .csv hold text,due date,priority[,completed] rows (quoted as in
+// RFC 4180, with an optional header row); anything else is read as a tasks.txt file. Rows that can't be parsed are
+// skipped and counted in the log
+class TaskImporter {
+    private static final Logger LOGGER = Logger.getLogger(TaskImporter.class.getName());
+
+    static List<Task> read(Path path) throws IOException {
+        if (!path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            // Imported tasks are new tasks, even if the file was copied from another task list, so they get new uids.
+            // Recurring tasks keep their recurrence, read afresh from the file
+            List<Task> tasks = new ArrayList<>();
+            for (Task task : TextTaskStore.read(path).tasks) {
+                tasks.add(new Task(task.getText(), task.isCompleted(), task.getDueDay(), task.getPriority(), Task.newUid(), task.getRecurrence()));
+            }
+            return tasks;
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = splitCsv(line, reader);
+                boolean header = first && fields.size() > 1 && fields.get(1).trim().equalsIgnoreCase("due");
+                first = false;
+                if (header || line.trim().isEmpty()) continue;
+
+                if (fields.size() < 3 || fields.size() > 4 || fields.get(0).isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+                String completed = fields.size() == 4 ? fields.get(3).trim() : "false";
+                try {
+                    // '|' separates the fields of tasks.txt and journal records
+                    String text = fields.get(0).replace('|', '/');
+                    tasks.add(TextTaskStore.parse(new String[] {text, completed, fields.get(1).trim(), capitalize(fields.get(2).trim())}));
+                } catch (DateTimeParseException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) LOGGER.warning(String.format("Skipped %d rows of %s that were not tasks", skipped, path));
+        return tasks;
+    }
+
+    // Fields of one CSV record. A quoted field may run onto the following lines, which are then read from reader
+    // and joined with spaces
+    private static List<String> splitCsv(String line, BufferedReader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; ; i++) {
+            if (i == line.length()) {
+                if (!quoted) break;
+                String next = reader.readLine();
+                if (next == null) break;
+                field.append(' '); // Task text is one line
+                line = next;
+                i = -1;
+                continue;
+            }
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') field.append(line.charAt(++i));
+                else quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // "high" -> "High", so imported priorities match the priority list
+    private static String capitalize(String priority) {
+        for (String value : Task.PRIORITIES) {
+            if (value.equalsIgnoreCase(priority)) return value;
+        }
+        return priority;
+    }
+}
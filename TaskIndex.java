@@ -0,0 +1,194 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Secondary indexes over the tasks: bitsets of task ids for each priority and for completed tasks,
+// the ids of the tasks due on each day, and the ids of the tasks containing each word of task text. Filters are answered from these instead of by scanning every task.
+// Tasks are known by the ids their TaskList gives them, and the index holds no Task objects.
+// Not thread-safe; TaskRepository guards it with its lock
+class TaskIndex {
+    private final BitSet liveIds = new BitSet();
+    private final BitSet completedIds = new BitSet();
+    private final Map<String, BitSet> idsByPriority = new HashMap<>();
+    private final Map<Integer, Postings> idsByDay = new HashMap<>();
+    // Sorted by word, so the words starting with a search term are one contiguous range
+    private final TreeMap<String, Postings> postingsByWord = new TreeMap<>();
+    // Short search terms match a huge range of words, so the tasks with a word starting with each prefix
+    // of up to SHORT_PREFIX characters are also kept under that prefix
+    private static final int SHORT_PREFIX = 3;
+    private final Map<String, Postings> postingsByPrefix = new HashMap<>();
+    
+    // The task already has its id
+    void add(Task task) {
+        int id = task.id;
+        liveIds.set(id);
+        completedIds.set(id, task.isCompleted());
+        idsByPriority.computeIfAbsent(priorityKey(task.getPriority()), k -> new BitSet()).set(id);
+        idsByDay.computeIfAbsent(task.getDueDay(), k -> new Postings()).add(id);
+        Set<String> words = words(task.getText());
+        for (String word : words) postingsByWord.computeIfAbsent(word, k -> new Postings()).add(id);
+        for (String prefix : shortPrefixes(words)) postingsByPrefix.computeIfAbsent(prefix, k -> new Postings()).add(id);
+    }
+    
+    // Call before the task list takes the tasks' ids back. Each word's and day's postings are compacted once, however
+    // many of the removed tasks they have
+    void removeAll(Collection<Task> tasks) {
+        BitSet removedIds = new BitSet();
+        Set<String> words = new HashSet<>();
+        Set<Integer> days = new HashSet<>();
+        for (Task task : tasks) {
+            int id = task.id;
+            if (id < 0 || !liveIds.get(id)) continue;
+            
+            liveIds.clear(id);
+            completedIds.clear(id);
+            BitSet priorityIds = idsByPriority.get(priorityKey(task.getPriority()));
+            if (priorityIds != null) priorityIds.clear(id);
+            
+            removedIds.set(id);
+            days.add(task.getDueDay());
+            words.addAll(words(task.getText()));
+        }
+        
+        for (int day : days) removePostings(idsByDay, day, removedIds);
+        for (String word : words) removePostings(postingsByWord, word, removedIds);
+        for (String prefix : shortPrefixes(words)) removePostings(postingsByPrefix, prefix, removedIds);
+    }
+    
+    // Call after a task's completed flag changes
+    void updateCompleted(Task task) {
+        if (task.id >= 0) completedIds.set(task.id, task.isCompleted());
+    }
+    
+    int countOnDay(int epochDay) {
+        Postings dayIds = idsByDay.get(epochDay);
+        return dayIds == null ? 0 : dayIds.size;
+    }
+    
+    // Ids of the tasks due on any day from firstDay to lastDay inclusive, in no particular order
+    int[] idsBetween(int firstDay, int lastDay) {
+        int count = 0;
+        for (int day = firstDay; day <= lastDay; day++) count += countOnDay(day);
+        int[] ids = new int[count];
+        count = 0;
+        for (int day = firstDay; day <= lastDay; day++) {
+            Postings dayIds = idsByDay.get(day);
+            if (dayIds == null) continue;
+            System.arraycopy(dayIds.ids, 0, ids, count, dayIds.size);
+            count += dayIds.size;
+        }
+        return ids;
+    }
+    
+    // Ids of the tasks matching the options
+    BitSet filter(FilterOptions options) {
+        BitSet priorityIds = options.priority == null ? null : idsByPriority.getOrDefault(priorityKey(options.priority), new BitSet());
+        BitSet textIds = options.text == null ? null : search(options.text);
+        
+        // A day holds few tasks, so check those one by one against the other bitsets
+        if (options.date != null) {
+            BitSet matches = new BitSet();
+            Postings dayIds = idsByDay.get((int) options.date.toEpochDay());
+            for (int i = 0; dayIds != null && i < dayIds.size; i++) {
+                int id = dayIds.ids[i];
+                boolean completed = completedIds.get(id);
+                if ((priorityIds == null || priorityIds.get(id)) && (textIds == null || textIds.get(id)) && (completed ? options.showComplete : options.showIncomplete)) {
+                    matches.set(id);
+                }
+            }
+            return matches;
+        }
+        
+        BitSet ids = (BitSet) liveIds.clone();
+        if (priorityIds != null) ids.and(priorityIds);
+        if (textIds != null) ids.and(textIds);
+        if (!options.showComplete) ids.andNot(completedIds);
+        if (!options.showIncomplete) ids.and(completedIds);
+        return ids;
+    }
+    
+    // Ids of the tasks that have, for every term of the query, a word starting with that term.
+    // Null if the query has no terms, meaning it doesn't restrict anything
+    private BitSet search(String query) {
+        BitSet result = null;
+        for (String term : words(query)) {
+            BitSet termIds = new BitSet(liveIds.length());
+            if (term.length() <= SHORT_PREFIX) {
+                Postings postings = postingsByPrefix.get(term);
+                if (postings != null) postings.addTo(termIds);
+            } else {
+                for (Postings postings : postingsByWord.subMap(term, true, term + Character.MAX_VALUE, false).values()) postings.addTo(termIds);
+            }
+            if (result == null) result = termIds;
+            else result.and(termIds);
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+    
+    // The distinct lowercase words of some text. Anything that isn't a letter or digit separates words
+    static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) start = i;
+            else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+    
+    // The distinct prefixes of up to SHORT_PREFIX characters of the words
+    private static Set<String> shortPrefixes(Set<String> words) {
+        Set<String> prefixes = new HashSet<>();
+        for (String word : words) {
+            for (int length = 1; length <= Math.min(word.length(), SHORT_PREFIX); length++) prefixes.add(word.substring(0, length));
+        }
+        return prefixes;
+    }
+    
+    private static <K> void removePostings(Map<K, Postings> postingsByKey, K key, BitSet ids) {
+        Postings postings = postingsByKey.get(key);
+        if (postings == null) return;
+        postings.removeAll(ids);
+        if (postings.size == 0) postingsByKey.remove(key);
+    }
+    
+    // Task ids containing one word (or prefix), or due on one day, in no particular order. Arrays rather than bitsets,
+    // since most words and days have only a few tasks and a bitset would be sized by the largest id
+    private static class Postings {
+        int[] ids = new int[2];
+        int size;
+        
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+        
+        void addTo(BitSet ids) {
+            for (int i = 0; i < size; i++) ids.set(this.ids[i]);
+        }
+        
+        void removeAll(BitSet removed) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(ids[i])) ids[kept++] = ids[i];
+            }
+            size = kept;
+        }
+    }
+    
+    // Priorities are matched ignoring case, like the priority filter buttons
+    private static String priorityKey(String priority) {
+        return String.valueOf(priority).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Checks TaskRepository's indexes against a plain scan of its tasks. A generated task list is loaded from a temp
+// directory, then changed round after round by random adds, removals, completions, undos and calendar moves, one task
+// at a time and in batches. After every round the per-day counts the calendar shows (countOnDay) must match a count
+// over the snapshot for every day that has ever had a task, and view() must return what a linear filter of the
+// snapshot does, in the same order, for every combination of priority, completion and day filter and for word and
+// prefix searches. Throws on the first mismatch.
+//
+// Usage: java TaskIndexCheck [--tasks 10000] [--rounds 50] [--seed 1]
+// (with -Dtodolist.storage=columns to check the columnar task list, and with -Dtodolist.format=segmented
+// -Dtodolist.segmentBudget=5, so every move of the calendar drops months, to check months loaded and dropped)
+public class TaskIndexCheck {
+
+    public static void main(String[] args) throws IOException {
+        int taskCount = 10_000;
+        int rounds = 50;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--tasks")) taskCount = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--rounds")) rounds = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--seed")) seed = Long.parseLong(args[i + 1]);
+        }
+
+        Path dir = Files.createTempDirectory("task-index-check");
+        try {
+            TextTaskStore.write(dir.resolve(TaskRepository.TASKS_FILE), TaskEngineBenchmark.generateTasks(taskCount), 0);
+            TaskRepository repository = new TaskRepository(dir);
+            repository.load();
+            Random random = new Random(seed);
+            Set<Integer> days = new HashSet<>(); // Every day that has had a task, so emptied days are checked too
+            long dayChecks = 0;
+            long filterChecks = 0;
+            try {
+                for (int round = 0; round <= rounds; round++) {
+                    if (round > 0) change(repository, random);
+                    dayChecks += checkDayCounts(repository, days, round);
+                    filterChecks += checkFilters(repository, random, round);
+                }
+            } finally {
+                repository.close();
+            }
+            System.out.printf("%d rounds over %d tasks (%d at the end): %d day counts and %d filters checked, all matched%n",
+                rounds, taskCount, repository.size(), dayChecks, filterChecks);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    // One round of changes, through the same calls the app makes
+    private static void change(TaskRepository repository, Random random) {
+        List<Task> all = repository.snapshot();
+        int firstDay = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+        switch (random.nextInt(8)) {
+            case 0:
+                repository.add(new Task("Added " + random.nextInt(1_000_000), false, firstDay + random.nextInt(365 * 8), randomPriority(random)));
+                break;
+            case 1: {
+                // More than TaskRepository slots into place one by one, so the batch is sorted in
+                List<Task> added = new ArrayList<>();
+                int day = all.isEmpty() ? firstDay : all.get(random.nextInt(all.size())).getDueDay();
+                for (int i = 0; i < 100; i++) added.add(new Task("Batch " + i, random.nextBoolean(), day + random.nextInt(3), randomPriority(random)));
+                repository.addAll(added);
+                break;
+            }
+            case 2:
+                if (!all.isEmpty()) repository.remove(all.get(random.nextInt(all.size())));
+                break;
+            case 3:
+                repository.removeAll(sample(all, 1 + random.nextInt(200), random));
+                break;
+            case 4:
+                if (!all.isEmpty()) {
+                    Task task = all.get(random.nextInt(all.size()));
+                    repository.setCompleted(task, !task.isCompleted());
+                }
+                break;
+            case 5:
+                repository.setCompleted(sample(all, 1 + random.nextInt(200), random), random.nextBoolean());
+                break;
+            case 6:
+                if (random.nextBoolean()) repository.undo();
+                else repository.redo();
+                break;
+            default: {
+                // A recurring task, and a move of the calendar, which makes its occurrences for the weeks shown and in
+                // segmented format loads the months around it and drops others. Then paging through the next months
+                YearMonth month = YearMonth.of(2020 + random.nextInt(8), 1 + random.nextInt(12));
+                if (random.nextBoolean()) {
+                    Recurrence recurrence = new Recurrence(Recurrence.Frequency.values()[random.nextInt(Recurrence.Frequency.values().length)], Recurrence.NO_END);
+                    repository.add(new Task("Repeats", false, (int) month.atDay(1).toEpochDay() - random.nextInt(60), randomPriority(random), Task.newUid(), recurrence));
+                }
+                repository.showMonth(month);
+                int pages = random.nextInt(4);
+                for (int i = 1; i <= pages; i++) repository.showMonth(month.plusMonths(i));
+                break;
+            }
+        }
+    }
+
+    // Compare countOnDay with a count over the snapshot for every day seen so far, and the days either side of them
+    private static int checkDayCounts(TaskRepository repository, Set<Integer> days, int round) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (Task task : repository.snapshot()) {
+            counts.merge(task.getDueDay(), 1, Integer::sum);
+            days.add(task.getDueDay());
+        }
+        Set<Integer> checked = new HashSet<>();
+        for (int day : days) {
+            for (int near = day - 1; near <= day + 1; near++) {
+                if (!checked.add(near)) continue;
+                int expected = counts.getOrDefault(near, 0);
+                int indexed = repository.countOnDay(near);
+                if (indexed != expected) {
+                    throw new IllegalStateException(String.format("Round %d: countOnDay(%s) is %d, but %d tasks are due that day",
+                        round, LocalDate.ofEpochDay(near), indexed, expected));
+                }
+            }
+        }
+        return checked.size();
+    }
+
+    // Compare view() with filterLinearly for each filter the app's buttons, calendar and search box can combine
+    private static int checkFilters(TaskRepository repository, Random random, int round) {
+        List<Task> all = repository.snapshot();
+        if (all.isEmpty()) return 0;
+        Task someTask = all.get(random.nextInt(all.size()));
+        LocalDate[] dates = {null, someTask.getDueDate(), LocalDate.of(2020, 1, 1).plusDays(random.nextInt(365 * 8))};
+        String[] priorities = {null, "low", "medium", "high", "High"};
+        List<String> queries = new ArrayList<>();
+        queries.add(null);
+        String[] words = someTask.getText().split(" ");
+        String word = words[random.nextInt(words.length)];
+        for (int length = 1; length <= word.length(); length++) queries.add(word.substring(0, length));
+        queries.add(word.toUpperCase(Locale.ROOT));
+        queries.add(someTask.getText());
+        queries.add(words[0] + ", " + words[words.length - 1].substring(0, 1));
+        queries.add("zzqx");
+        queries.add("  ");
+
+        int checks = 0;
+        for (int completion = 1; completion <= 3; completion++) {
+            for (LocalDate date : dates) {
+                for (String priority : priorities) {
+                    FilterOptions options = new FilterOptions(date, priority);
+                    options.showComplete = (completion & 1) != 0;
+                    options.showIncomplete = (completion & 2) != 0;
+                    compare(repository, all, options, round);
+                    checks++;
+                }
+            }
+            for (String query : queries) {
+                FilterOptions options = new FilterOptions(completion == 3 ? null : someTask.getDueDate(), null);
+                options.showComplete = (completion & 1) != 0;
+                options.showIncomplete = (completion & 2) != 0;
+                options.text = query;
+                compare(repository, all, options, round);
+                checks++;
+            }
+        }
+        return checks;
+    }
+
+    private static void compare(TaskRepository repository, List<Task> all, FilterOptions options, int round) {
+        TaskRepository.View view = repository.view(options);
+        List<Task> expected = filterLinearly(all, options);
+        boolean same = view.size() == expected.size();
+        for (int i = 0; same && i < expected.size(); i++) {
+            Task indexed = view.get(i);
+            same = indexed.getUid() == expected.get(i).getUid() && indexed.getDueDay() == expected.get(i).getDueDay();
+        }
+        if (!same) {
+            throw new IllegalStateException(String.format("Round %d: view(date %s, priority %s, completed %b, incomplete %b, text \"%s\") has %d tasks, a scan finds %d",
+                round, options.date, options.priority, options.showComplete, options.showIncomplete, options.text, view.size(), expected.size()));
+        }
+    }
+
+    // The filter as a scan of every task, the way it was done before the indexes: priority ignoring case, and each
+    // search term the start of some word of the text
+    private static List<Task> filterLinearly(List<Task> all, FilterOptions options) {
+        Set<String> terms = options.text == null ? new HashSet<>() : TaskIndex.words(options.text);
+        List<Task> matches = new ArrayList<>();
+        for (Task task : all) {
+            if (task.isCompleted() ? !options.showComplete : !options.showIncomplete) continue;
+            if (options.date != null && task.getDueDay() != options.date.toEpochDay()) continue;
+            if (options.priority != null && !task.getPriority().equalsIgnoreCase(options.priority)) continue;
+            if (!terms.isEmpty()) {
+                Set<String> words = TaskIndex.words(task.getText());
+                boolean found = true;
+                for (String term : terms) found &= words.stream().anyMatch(w -> w.startsWith(term));
+                if (!found) continue;
+            }
+            matches.add(task);
+        }
+        return matches;
+    }
+
+    private static List<Task> sample(List<Task> tasks, int count, Random random) {
+        List<Task> sample = new ArrayList<>();
+        for (int i = 0; i < count && !tasks.isEmpty(); i++) sample.add(tasks.get(random.nextInt(tasks.size())));
+        return sample;
+    }
+
+    private static String randomPriority(Random random) {
+        return Task.PRIORITIES[random.nextInt(Task.PRIORITIES.length)];
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+// The tasks of a TaskRepository, kept in Task.ORDER, and the ids TaskIndex knows them by. ObjectTaskList keeps them as
+// Task objects; ColumnarTaskList (-Dtodolist.storage=columns) keeps them in TaskColumns and makes Task objects only for
+// the tasks asked for. Not thread-safe; TaskRepository guards it with its lock
+interface TaskList {
+    int size();
+
+    // The task at a position in sorted order
+    Task get(int position);
+
+    // The task with an id given out by add, as it is now
+    Task byId(int id);
+
+    // The version here now of a task got from this list or added to it, or null if it has been removed since
+    Task current(Task task);
+
+    // Gives the task its id and, unless sortLater, puts it straight into its sorted place. Returns the id
+    int add(Task task, boolean sortLater);
+
+    // The tasks are current versions, each once. Also before sort(), as when the calendar drops months just loaded
+    void removeAll(Collection<Task> tasks);
+
+    // Unless sortLater, the task is moved to its new sorted place
+    void setCompleted(Task task, boolean completed, boolean sortLater);
+
+    // Sort everything added or changed with sortLater. Stable, like insertion after the tasks that sort equal
+    void sort();
+
+    // Read-only list of the tasks in sorted order as of now, for readers on any thread
+    Snapshot snapshot();
+
+    // The positions in sorted order (so in snapshot()) of the tasks with these ids, ascending. Called by readers
+    // holding the read lock, so concurrently
+    int[] positionsOf(BitSet ids);
+
+    // Give back the spare room left by growing, after loading
+    void trimToSize();
+
+    // A snapshot also keeps whether each task was completed when it was taken, since a toggle may change the task
+    // objects it holds, so two snapshots tell a toggled task apart
+    interface Snapshot extends List<Task> {
+        boolean wasCompleted(int position);
+    }
+}
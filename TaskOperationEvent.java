@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JFR event for each timed operation in Metrics, so a recording lines them up with GC and other JVM events
+@Name("todolist.TaskOperation")
+@Label("Task Operation")
+@Category("To-Do List")
+@Description("A load, save, sort, filter or render timed by Metrics")
+class TaskOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
@@ -0,0 +1,1264 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// The task list and its persistence, with no Swing dependencies. Changes go through add, remove and setCompleted;
+// reads (snapshot, view, countOnDay) may come from any thread and see the list as of the last completed change
+public class TaskRepository {
+    static final String TASKS_FILE = "tasks.txt";
+    static final String BINARY_TASKS_FILE = "tasks.bin";
+    static final String JOURNAL_FILE = "tasks.txt.journal";
+    static final String LOCK_FILE = "tasks.txt.lock";
+    // Keep the snapshot in BINARY_TASKS_FILE instead of TASKS_FILE (-Dtodolist.format=binary)
+    private static final boolean BINARY_FORMAT = "binary".equalsIgnoreCase(System.getProperty("todolist.format"));
+    // Keep tasks in month segments under SegmentedTaskStore.DIRECTORY and load only the months around the one shown
+    // (-Dtodolist.format=segmented)
+    private static final boolean SEGMENTED_FORMAT = "segmented".equalsIgnoreCase(System.getProperty("todolist.format"));
+    // Keep the tasks in columns rather than as objects (-Dtodolist.storage=columns); see ColumnarTaskList. Not with
+    // segmented format, which drops and reloads months as the calendar moves, since the columns don't reuse the rows
+    private static final boolean COLUMNS_REQUESTED = "columns".equalsIgnoreCase(System.getProperty("todolist.storage"));
+    static final boolean COLUMNAR_STORAGE = COLUMNS_REQUESTED && !SEGMENTED_FORMAT;
+    // Append changes to JOURNAL_FILE rather than rewriting TASKS_FILE on every change (-Dtodolist.journal=false to disable).
+    // Segmented format rewrites the changed months instead
+    private static final boolean JOURNAL_MODE = !SEGMENTED_FORMAT && !"false".equalsIgnoreCase(System.getProperty("todolist.journal"));
+    // Let several processes use the same task files (-Dtodolist.shared=true). Writes hold a FileLock on LOCK_FILE, and
+    // the records other processes append to the journal are merged in as they appear. Needs the journal
+    private static final boolean SHARED_MODE = JOURNAL_MODE && Boolean.getBoolean("todolist.shared");
+    // Journal size (bytes) past which it is folded into a fresh snapshot of TASKS_FILE
+    private static final long JOURNAL_COMPACT_BYTES = Long.getLong("todolist.journalCompactBytes", 1 << 20);
+    // Changes made within this many milliseconds of the first one are saved together in one write
+    private static final int SAVE_DEBOUNCE_MS = Integer.getInteger("todolist.saveDebounceMs", 250);
+    // Months either side of the shown month that segmented format keeps loaded
+    private static final int SEGMENT_WINDOW_MONTHS = Integer.getInteger("todolist.segmentWindow", 1);
+    // Loaded tasks past which segmented format drops months outside the window, least recently shown first
+    private static final int SEGMENT_BUDGET_TASKS = Integer.getInteger("todolist.segmentBudget", 100_000);
+    // Batches of more tasks than this are merged in with one sort; smaller ones are slotted into place one by one
+    private static final int SORT_BATCH_TASKS = 64;
+
+    private static final Logger LOGGER = Logger.getLogger(TaskRepository.class.getName());
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.latency("repository.load");
+    private static final LatencyHistogram SAVE_LATENCY = Metrics.latency("repository.save");
+    private static final LatencyHistogram SORT_LATENCY = Metrics.latency("repository.sort");
+    private static final LatencyHistogram FILTER_LATENCY = Metrics.latency("repository.filter");
+    private static final LatencyHistogram SHOW_MONTH_LATENCY = Metrics.latency("repository.showMonth");
+
+    private final Path tasksFile;
+    private final Path binaryTasksFile;
+    private final Path journalFile;
+    private final Path lockFile;
+    private final SegmentedTaskStore segments;
+
+    // Guards tasks and index
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Kept sorted by Task.ORDER. A changed task is found and placed by binary search, O(log n), plus shifting the tasks
+    // after it (one arraycopy); what the list shows still costs O(n) a change, in currentSnapshot and TaskListModel.
+    // Tasks passed in are looked up with tasks.current(), since with columnar storage they are views made on reading
+    private final TaskList tasks;
+    private final TaskIndex index = new TaskIndex();
+    private final UndoLog undoLog = new UndoLog(UndoLog.UNDO_LIMIT, UndoLog.UNDO_TASKS);
+    // Recurring tasks, each with its occurrences in the calendar window. Only the occurrences are in tasks and index;
+    // they are made afresh when the window moves, so the work stays in proportion to the recurring tasks
+    private final Map<Task, List<Task>> recurringTasks = new LinkedHashMap<>();
+    private int windowFirstDay = Integer.MIN_VALUE; // The calendar window: the six weeks shown for shownMonth
+    // Segmented format: months whose tasks are loaded, least recently shown first, and the month shown
+    private final LinkedHashMap<YearMonth, Boolean> loadedMonths = new LinkedHashMap<>(16, 0.75f, true);
+    private YearMonth shownMonth = YearMonth.now();
+    // Read-only copy of tasks for readers, rebuilt on first read after a change
+    private volatile TaskList.Snapshot snapshot = ObjectTaskList.Tasks.EMPTY;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // All file writes run on this thread, in the order they were requested
+    private final ScheduledExecutorService persistenceExecutor;
+    private final List<String> pendingJournal = new ArrayList<>(); // Journal records not yet written; also guards the fields below
+    private final Set<Long> pendingUids = new HashSet<>(); // Uids of the tasks in pendingJournal
+    private boolean snapshotPending = false;
+    private boolean recurringPending = false; // Segmented format: recurring tasks have unwritten changes
+    private boolean writeScheduled = false;
+    // Segmented format: months with unwritten changes, and how many. Kept loaded until written
+    private final Map<YearMonth, Integer> dirtyMonths = new HashMap<>();
+    private final AtomicLong writesRequested = Metrics.counter("saves.requested");
+    private final AtomicLong writesPerformed = Metrics.counter("saves.written");
+    private final AtomicLong externalChanges = Metrics.counter("shared.merged");
+
+    // Only used on the persistence thread once loaded
+    private long journalSeq = 0; // Sequence number of the last journal record
+    // Shared mode: how much of the journal has been applied here, and the file it was (compaction replaces it)
+    private long journalOffset = 0;
+    private Object journalFileKey;
+    private volatile WatchService watchService;
+
+    // Tasks are kept in tasks.txt (or tasks.bin) and tasks.txt.journal in the given directory
+    public TaskRepository(Path directory) {
+        this.tasksFile = directory.resolve(TASKS_FILE);
+        this.binaryTasksFile = directory.resolve(BINARY_TASKS_FILE);
+        this.journalFile = directory.resolve(JOURNAL_FILE);
+        this.lockFile = directory.resolve(LOCK_FILE);
+        this.segments = new SegmentedTaskStore(directory.resolve(SegmentedTaskStore.DIRECTORY));
+        this.tasks = COLUMNAR_STORAGE ? new ColumnarTaskList(lock.readLock()) : new ObjectTaskList();
+        if (COLUMNS_REQUESTED && SEGMENTED_FORMAT) LOGGER.warning("Segmented format keeps tasks as objects; -Dtodolist.storage=columns is ignored");
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "tasks-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // close() writes everything itself, so a debounced write still waiting at shutdown can be dropped
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.persistenceExecutor = executor;
+    }
+
+    // A filtered, sorted list of tasks. Rows index into tasks; null rows means every task
+    public static class View {
+        static final View EMPTY = new View(ObjectTaskList.Tasks.EMPTY, null);
+
+        private final TaskList.Snapshot tasks;
+        private final int[] rows;
+
+        View(TaskList.Snapshot tasks, int[] rows) {
+            this.tasks = tasks;
+            this.rows = rows;
+        }
+
+        public int size() {
+            return rows == null ? tasks.size() : rows.length;
+        }
+
+        public Task get(int index) {
+            return tasks.get(rows == null ? index : rows[index]);
+        }
+
+        // Whether index here and otherIndex in other are the same task, completed or not in both
+        boolean sameTask(int index, View other, int otherIndex) {
+            int row = rows == null ? index : rows[index];
+            int otherRow = other.rows == null ? otherIndex : other.rows[otherIndex];
+            if (tasks.wasCompleted(row) != other.tasks.wasCompleted(otherRow)) return false;
+            if (tasks instanceof ColumnarTaskList.Rows && other.tasks instanceof ColumnarTaskList.Rows) {
+                return ((ColumnarTaskList.Rows) tasks).sameTask(row, (ColumnarTaskList.Rows) other.tasks, otherRow);
+            }
+            return tasks.get(row) == other.tasks.get(otherRow);
+        }
+    }
+
+    // Called after every change, on the thread that made it
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) listener.run();
+    }
+
+    // All tasks in sorted order
+    public List<Task> snapshot() {
+        List<Task> current = snapshot;
+        if (current != null) return current;
+        lock.readLock().lock();
+        try {
+            return currentSnapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Call with the lock held. Writers can't null the field until the lock is released, so it can't go stale here.
+    // The first read after a change copies every task, so this is O(n) however little changed
+    private TaskList.Snapshot currentSnapshot() {
+        TaskList.Snapshot current = snapshot;
+        if (current == null) {
+            current = tasks.snapshot();
+            snapshot = current;
+        }
+        return current;
+    }
+
+    // The tasks matching options, in sorted order
+    public View view(FilterOptions options) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            TaskList.Snapshot all = currentSnapshot();
+            if (options.matchesAll()) return new View(all, null);
+            return new View(all, tasks.positionsOf(index.filter(options)));
+        } finally {
+            lock.readLock().unlock();
+            Metrics.record(FILTER_LATENCY, start);
+        }
+    }
+
+    public int countOnDay(int epochDay) {
+        lock.readLock().lock();
+        try {
+            return index.countOnDay(epochDay);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Incomplete tasks due on the day, for reminders. One-off tasks come from the index, or from the day's segment if
+    // its month isn't loaded; recurring tasks are checked for an occurrence that day whether or not the calendar shows it
+    public List<Task> incompleteDueOn(int day) {
+        List<Task> due = new ArrayList<>();
+        YearMonth month = SegmentedTaskStore.monthOf(day);
+        boolean loaded;
+        lock.readLock().lock();
+        try {
+            loaded = !SEGMENTED_FORMAT || loadedMonths.containsKey(month);
+            if (loaded) {
+                for (Task task : tasksBetween(day, day)) {
+                    if (!task.isCompleted() && task.getSeries() == null) due.add(task);
+                }
+            }
+            for (Task task : recurringTasks.keySet()) {
+                Recurrence recurrence = task.getRecurrence();
+                if (!recurrence.isCompleted(day) && !recurrence.occurrences(task.getDueDay(), day, day).isEmpty()) due.add(task.occurrence(day));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!loaded) {
+            try {
+                for (Task task : segments.read(month)) {
+                    if (task.getDueDay() == day && !task.isCompleted()) due.add(task);
+                }
+            } catch (IOException e) {
+                Metrics.error(e);
+            }
+        }
+        return due;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(Task task) {
+        addAll(Collections.singletonList(task));
+    }
+
+    // Add all the tasks with one save and one change notification
+    public void addAll(Collection<Task> added) {
+        addAll(added, true);
+    }
+
+    private int addAll(Collection<Task> added, boolean undoable) {
+        if (added.isEmpty()) return 0;
+        lock.writeLock().lock();
+        try {
+            boolean sort = added.size() > SORT_BATCH_TASKS;
+            // The rest of the month has to be loaded, or writing the month would drop it. Loaded tasks arrive unsorted
+            if (SEGMENTED_FORMAT) {
+                for (Task task : added) {
+                    if (task.getRecurrence() == null) sort |= loadMonth(SegmentedTaskStore.monthOf(task.getDueDay()));
+                }
+            }
+            for (Task task : added) {
+                if (task.getRecurrence() != null) addRecurring(task, sort);
+                else addTask(task, sort);
+                journal("ADD", task);
+                changed(task);
+            }
+            if (undoable) undoLog.record(UndoLog.Op.ADD, added.toArray(new Task[0]));
+            if (sort) sortTasks();
+            requestSave();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        fireChanged();
+        return added.size();
+    }
+
+    // False if the task isn't in the repository
+    public boolean remove(Task task) {
+        return removeAll(Collections.singletonList(task)) == 1;
+    }
+
+    // Remove the tasks in one pass over the list, with one save and one change notification. Removing an occurrence of
+    // a recurring task removes the recurring task. Returns how many were removed
+    public int removeAll(Collection<Task> removed) {
+        return removeAll(removed, true);
+    }
+
+    private int removeAll(Collection<Task> removed, boolean undoable) {
+        Map<Integer, Task> found = new HashMap<>();
+        List<Task> storedRemoved = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (Task task : removed) {
+                Task stored = collectRemoval(task.getSeries() != null ? task.getSeries() : task, found);
+                if (stored == null) continue;
+                storedRemoved.add(stored);
+                journal("REMOVE", stored);
+                changed(stored);
+            }
+            if (storedRemoved.isEmpty()) return 0;
+            removeTasks(found.values());
+            if (undoable) undoLog.record(UndoLog.Op.REMOVE, storedRemoved.toArray(new Task[0]));
+            requestSave();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        fireChanged();
+        return storedRemoved.size();
+    }
+
+    // Remove every completed task. Returns how many were removed
+    public int removeCompleted() {
+        List<Task> completed = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // Completed tasks sort last. A completed occurrence doesn't end its recurring task
+            for (int i = tasks.size() - 1; i >= 0 && tasks.get(i).isCompleted(); i--) {
+                if (tasks.get(i).getSeries() == null) completed.add(tasks.get(i));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return removeAll(completed);
+    }
+
+    // Returns the task as it is now, or null if it isn't in the repository. With columnar storage the task passed in
+    // doesn't change, so callers that show the result use this
+    public Task setCompleted(Task task, boolean completed) {
+        setCompleted(Collections.singletonList(task), completed);
+        lock.readLock().lock();
+        try {
+            Task current = tasks.current(task);
+            if (current == null && task.getSeries() != null) current = tasks.current(currentOccurrence(task));
+            return current;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Mark all the tasks with one save and one change notification
+    public void setCompleted(Collection<Task> changedTasks, boolean completed) {
+        setCompleted(changedTasks, completed, true);
+    }
+
+    private int setCompleted(Collection<Task> changedTasks, boolean completed, boolean undoable) {
+        List<Task> toggled = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            boolean sort = changedTasks.size() > SORT_BATCH_TASKS;
+            for (Task changedTask : changedTasks) {
+                Task task = tasks.current(changedTask);
+                // An occurrence from before the calendar moved stands for the one made since, if that's still shown
+                if (task == null && changedTask.getSeries() != null) task = tasks.current(currentOccurrence(changedTask));
+                if (task == null || task.isCompleted() == completed) continue;
+                // An occurrence's record has the recurring task's uid and the occurrence's day
+                journal("TOGGLE", task);
+                if (task.getSeries() != null) task.getSeries().getRecurrence().setCompleted(task.getDueDay(), completed);
+                updateCompleted(task, completed, sort);
+                changed(task);
+                toggled.add(task);
+            }
+            if (toggled.isEmpty()) return 0;
+            if (undoable) undoLog.record(completed ? UndoLog.Op.COMPLETE : UndoLog.Op.UNCOMPLETE, toggled.toArray(new Task[0]));
+            if (sort) sortTasks();
+            requestSave();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        fireChanged();
+        return toggled.size();
+    }
+
+    // Undo the last change made through add, remove or setCompleted that hasn't been undone yet. It is saved and
+    // shown like any other change. False if there was nothing to undo, or none of it could be undone
+    public boolean undo() {
+        return applyChange(true);
+    }
+
+    // Make the last undone change again. False if there was nothing to redo, or none of it could be redone
+    public boolean redo() {
+        return applyChange(false);
+    }
+
+    // The change is applied to the tasks here now with the uids it recorded, since those it recorded may have been
+    // replaced: segmented format drops months and loads them again, and merges from other processes replace tasks
+    private boolean applyChange(boolean undo) {
+        UndoLog.Change change;
+        List<Task> present = new ArrayList<>(); // The current versions of the tasks still here
+        List<Task> absent = new ArrayList<>(); // The recorded versions of the rest
+        boolean loaded = false;
+        lock.writeLock().lock();
+        try {
+            change = undo ? undoLog.undo() : undoLog.redo();
+            if (change == null) return false;
+            if (SEGMENTED_FORMAT) {
+                for (Task task : change.tasks) {
+                    if (task.getRecurrence() == null && task.getSeries() == null) loaded |= loadMonth(SegmentedTaskStore.monthOf(task.getDueDay()));
+                }
+                if (loaded) {
+                    sortTasks();
+                    snapshot = null;
+                }
+            }
+            for (Task task : change.tasks) {
+                Task current = currentTask(task);
+                if (current != null) present.add(current);
+                else absent.add(task);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int applied;
+        switch (change.op) {
+            case ADD: applied = undo ? removeAll(present, false) : addAll(absent, false); break;
+            case REMOVE: applied = undo ? addAll(absent, false) : removeAll(present, false); break;
+            case COMPLETE: applied = setCompleted(present, !undo, false); break;
+            default: applied = setCompleted(present, undo, false); break;
+        }
+        if (applied == 0 && loaded) fireChanged();
+        return applied > 0;
+    }
+
+    // Call with the write lock held. The task here now with the same uid (and day, for an occurrence), or null
+    private Task currentTask(Task recorded) {
+        if (recorded.getRecurrence() != null) {
+            for (Task task : recurringTasks.keySet()) {
+                if (task.getUid() == recorded.getUid()) return task;
+            }
+            return null;
+        }
+        Task current = tasks.current(recorded);
+        if (current != null) return current;
+        for (Task task : tasksBetween(recorded.getDueDay(), recorded.getDueDay())) {
+            if (task.getUid() == recorded.getUid() && (task.getSeries() != null) == (recorded.getSeries() != null)) return task;
+        }
+        return null;
+    }
+
+    // Call with the lock held. The occurrence now in the list for the same recurring task and day as one made
+    // for an earlier calendar window, or the old one if the day isn't in the window any more
+    private Task currentOccurrence(Task occurrence) {
+        List<Task> occurrences = recurringTasks.get(occurrence.getSeries());
+        if (occurrences == null) return occurrence;
+        for (Task task : occurrences) {
+            if (task.getDueDay() == occurrence.getDueDay()) return task;
+        }
+        return occurrence;
+    }
+
+    // Call with the write lock held
+    private void sortTasks() {
+        long start = System.nanoTime();
+        tasks.sort();
+        Metrics.record(SORT_LATENCY, start);
+    }
+
+    // Call with the write lock held. Unless sortLater, the task goes straight into its sorted place
+    private void addTask(Task task, boolean sortLater) {
+        tasks.add(task, sortLater);
+        index.add(task);
+    }
+
+    // Call with the lock held. The tasks due from firstDay to lastDay, in no particular order
+    private List<Task> tasksBetween(int firstDay, int lastDay) {
+        int[] ids = index.idsBetween(firstDay, lastDay);
+        List<Task> between = new ArrayList<>(ids.length);
+        for (int id : ids) between.add(tasks.byId(id));
+        return between;
+    }
+
+    // Call with the write lock held. Adds the recurring task and its occurrences in the calendar window
+    private void addRecurring(Task task, boolean sortLater) {
+        List<Task> occurrences = new ArrayList<>();
+        for (int day : task.getRecurrence().occurrences(task.getDueDay(), windowFirstDay, windowFirstDay + 41)) {
+            Task occurrence = task.occurrence(day);
+            addTask(occurrence, sortLater);
+            occurrences.add(occurrence);
+        }
+        recurringTasks.put(task, occurrences);
+    }
+
+    // Call with the write lock held. Adds the task's current version to removing (by id), for removeTasks, or if it is
+    // recurring takes it out of recurringTasks and adds its occurrences. Returns the task as stored, or null if it
+    // isn't here or is already being removed
+    private Task collectRemoval(Task task, Map<Integer, Task> removing) {
+        if (task.getRecurrence() != null) {
+            List<Task> occurrences = recurringTasks.remove(task);
+            if (occurrences == null) return null;
+            for (Task occurrence : occurrences) removing.put(occurrence.id, occurrence);
+            return task;
+        }
+        Task current = tasks.current(task);
+        if (current == null || removing.containsKey(current.id)) return null;
+        removing.put(current.id, current);
+        return current;
+    }
+
+    // Call with the write lock held. The tasks are current versions, each once
+    private void removeTasks(Collection<Task> removed) {
+        if (removed.isEmpty()) return;
+        index.removeAll(removed);
+        tasks.removeAll(removed);
+    }
+
+    // Call with the write lock held, with the task's current version. Unless sortLater, the task is moved to its new
+    // sorted place
+    private void updateCompleted(Task task, boolean completed, boolean sortLater) {
+        tasks.setCompleted(task, completed, sortLater);
+        index.updateCompleted(task);
+    }
+
+    // Call with the write lock held, after each change to a task. The caller then calls requestSave once
+    private void changed(Task task) {
+        snapshot = null;
+        if (SEGMENTED_FORMAT) {
+            synchronized (pendingJournal) {
+                if (task.getRecurrence() != null || task.getSeries() != null) recurringPending = true;
+                else dirtyMonths.merge(SegmentedTaskStore.monthOf(task.getDueDay()), 1, Integer::sum);
+            }
+        } else if (!JOURNAL_MODE) {
+            synchronized (pendingJournal) {
+                snapshotPending = true;
+            }
+        }
+    }
+
+    // Make the occurrences of recurring tasks for the weeks the calendar shows of this month. In segmented format, also
+    // make sure the months around it are loaded, dropping other months past SEGMENT_BUDGET_TASKS
+    public void showMonth(YearMonth month) {
+        long start = System.nanoTime();
+        boolean changed;
+        lock.writeLock().lock();
+        try {
+            shownMonth = month;
+            changed = SEGMENTED_FORMAT && loadWindow();
+            changed |= makeOccurrences();
+            if (changed) {
+                sortTasks();
+                snapshot = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+            Metrics.record(SHOW_MONTH_LATENCY, start);
+        }
+        if (changed) fireChanged();
+    }
+
+    // Call with the write lock held. If the calendar window has moved, replaces the occurrences of recurring tasks with
+    // those in the new window. Whether any were added or removed; tasks is left unsorted
+    private boolean makeOccurrences() {
+        LocalDate firstOfMonth = shownMonth.atDay(1);
+        int firstDay = (int) firstOfMonth.toEpochDay() - firstOfMonth.getDayOfWeek().getValue() % 7; // The Sunday before
+        if (firstDay == windowFirstDay) return false;
+        windowFirstDay = firstDay;
+
+        List<Task> previous = new ArrayList<>();
+        for (List<Task> occurrences : recurringTasks.values()) previous.addAll(occurrences);
+        removeTasks(previous);
+        int size = tasks.size();
+        for (Task task : new ArrayList<>(recurringTasks.keySet())) addRecurring(task, true);
+        return !previous.isEmpty() || tasks.size() > size;
+    }
+
+    // Call with the write lock held. Whether any tasks were loaded or dropped; tasks is left unsorted
+    private boolean loadWindow() {
+        boolean changed = false;
+        for (int offset = -SEGMENT_WINDOW_MONTHS; offset <= SEGMENT_WINDOW_MONTHS; offset++) {
+            changed |= loadMonth(shownMonth.plusMonths(offset));
+        }
+        return evictMonths() || changed;
+    }
+
+    // Call with the write lock held. Adds the month's tasks to the end of tasks; false if there were none to load
+    private boolean loadMonth(YearMonth month) {
+        if (loadedMonths.get(month) != null) return false; // get() also marks it recently used
+        List<Task> loaded;
+        try {
+            loaded = segments.read(month);
+        } catch (IOException e) {
+            Metrics.error(e);
+            return false;
+        }
+        loadedMonths.put(month, true);
+        for (Task task : loaded) addTask(task, true);
+        return !loaded.isEmpty();
+    }
+
+    // Call with the write lock held. Drop least recently shown months until the loaded tasks fit the budget,
+    // keeping the window and months with unwritten changes
+    private boolean evictMonths() {
+        boolean changed = false;
+        Iterator<YearMonth> months = loadedMonths.keySet().iterator();
+        while (tasks.size() > SEGMENT_BUDGET_TASKS && months.hasNext()) {
+            YearMonth month = months.next();
+            boolean dirty;
+            synchronized (pendingJournal) {
+                dirty = dirtyMonths.containsKey(month);
+            }
+            if (dirty || Math.abs(shownMonth.until(month, ChronoUnit.MONTHS)) <= SEGMENT_WINDOW_MONTHS) continue;
+
+            months.remove();
+            List<Task> evicted = tasksIn(month);
+            removeTasks(evicted);
+            changed |= !evicted.isEmpty();
+        }
+        return changed;
+    }
+
+    // Call with the lock held. The month's one-off tasks; occurrences of recurring tasks aren't stored by month
+    private List<Task> tasksIn(YearMonth month) {
+        List<Task> inMonth = tasksBetween((int) month.atDay(1).toEpochDay(), (int) month.atEndOfMonth().toEpochDay());
+        inMonth.removeIf(task -> task.getSeries() != null);
+        return inMonth;
+    }
+
+    // Queue one change for the journal; it gets its sequence number when written. TOGGLE is recorded with the task as
+    // it was before the toggle. Records name tasks by uid and replaying one that is already applied changes nothing,
+    // so a snapshot taken while records are still queued stays correct
+    private void journal(String op, Task task) {
+        if (!JOURNAL_MODE) return;
+        synchronized (pendingJournal) {
+            pendingJournal.add(op + "|" + TextTaskStore.encode(task));
+            pendingUids.add(task.getUid());
+        }
+    }
+
+    private void requestSave() {
+        writesRequested.incrementAndGet();
+        scheduleWrite();
+    }
+
+    private void scheduleWrite() {
+        synchronized (pendingJournal) {
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        persistenceExecutor.schedule(this::writePending, SAVE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Write everything requested since the last write. Runs on persistenceExecutor. In shared mode, first merge in
+    // what other processes have written, all under the file lock. If that fails nothing is written, since compacting
+    // could drop the records not merged; the changes stay queued for the next write
+    @SuppressWarnings("try") // fileLock is only held, not used
+    private void writePending() {
+        try {
+            if (!SHARED_MODE) {
+                writeChanges();
+                return;
+            }
+            try (FileChannel fileLock = lockTaskFiles()) {
+                mergeExternalChanges();
+                writeChanges();
+                // Everything in the journal is now applied here
+                journalOffset = Files.exists(journalFile) ? Files.size(journalFile) : 0;
+                journalFileKey = fileKey(journalFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The executor would drop a RuntimeException without a word
+            Metrics.error(e);
+        } finally {
+            // writeChanges clears it too, but not if it was never reached; left set, no later change would be saved
+            synchronized (pendingJournal) {
+                writeScheduled = false;
+            }
+        }
+    }
+
+    private void writeChanges() {
+        long start = System.nanoTime();
+        List<String> records;
+        boolean writeSnapshot;
+        List<YearMonth> months;
+        boolean writeRecurring;
+        synchronized (pendingJournal) {
+            records = new ArrayList<>(pendingJournal);
+            pendingJournal.clear();
+            pendingUids.clear();
+            writeSnapshot = snapshotPending;
+            snapshotPending = false;
+            writeScheduled = false;
+            months = new ArrayList<>(dirtyMonths.keySet());
+            writeRecurring = recurringPending;
+            recurringPending = false;
+        }
+        for (YearMonth month : months) writeMonth(month);
+        if (writeRecurring) writeRecurring();
+
+        try {
+            boolean compact = false;
+            if (!records.isEmpty()) {
+                appendJournal(records);
+                // Once the journal grows past JOURNAL_COMPACT_BYTES, fold it into a new snapshot and drop the records it covers
+                compact = Files.size(journalFile) >= JOURNAL_COMPACT_BYTES;
+            }
+            if (writeSnapshot || compact) {
+                List<Task> copies;
+                long seq = journalSeq;
+                lock.readLock().lock();
+                try {
+                    copies = snapshotTasks();
+                } finally {
+                    lock.readLock().unlock();
+                }
+                writeSnapshot(copies, seq);
+                writesPerformed.incrementAndGet();
+                if (compact) trimJournal(seq);
+            }
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+        Metrics.record(SAVE_LATENCY, start);
+    }
+
+    // Rewrite one month's segment. It stays dirty, and so loaded, unless nothing changed in it while writing
+    private void writeMonth(YearMonth month) {
+        List<Task> copies;
+        Integer changes;
+        lock.readLock().lock();
+        try {
+            if (!loadedMonths.containsKey(month)) {
+                // Writing only the tasks added since would lose the rest of the month
+                LOGGER.warning("Not saving " + month + " because its segment could not be read");
+                return;
+            }
+            copies = copiesOf(tasksIn(month));
+            synchronized (pendingJournal) {
+                changes = dirtyMonths.get(month);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            segments.write(month, copies);
+            writesPerformed.incrementAndGet();
+            synchronized (pendingJournal) {
+                dirtyMonths.remove(month, changes);
+            }
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+    }
+
+    private void writeRecurring() {
+        List<Task> copies;
+        lock.readLock().lock();
+        try {
+            copies = copiesOf(recurringTasks.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            segments.writeRecurring(copies);
+            writesPerformed.incrementAndGet();
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+    }
+
+    // Write out anything still pending now, without waiting for the debounce delay
+    public void flush() {
+        persistenceExecutor.execute(this::writePending);
+    }
+
+    // Write out whatever is still pending and wait for it. The repository can't save changes after this
+    public void close() {
+        WatchService watching = watchService;
+        if (watching != null) {
+            try {
+                watching.close();
+            } catch (IOException e) {
+                Metrics.error(e);
+            }
+        }
+        flush();
+        persistenceExecutor.shutdown();
+        try {
+            persistenceExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info(String.format("Saves requested: %d, writes performed: %d", writesRequested.get(), writesPerformed.get()));
+    }
+
+    public long getWritesRequested() { return writesRequested.get(); }
+    public long getWritesPerformed() { return writesPerformed.get(); }
+
+    // Copies of the tasks as they are now, safe to write while the originals keep changing. Call with the lock held
+    private List<Task> snapshotTasks() {
+        return copiesOf(storedTasks());
+    }
+
+    // The tasks as they are saved: recurring tasks in place of their occurrences. Call with the lock held
+    private List<Task> storedTasks() {
+        List<Task> stored = new ArrayList<>(tasks.size());
+        for (Task task : currentSnapshot()) {
+            if (task.getSeries() == null) stored.add(task);
+        }
+        stored.addAll(recurringTasks.keySet());
+        return stored;
+    }
+
+    private static List<Task> copiesOf(Collection<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task task : tasks) copies.add(task.copy());
+        return copies;
+    }
+
+    // Call with the write lock held, before the tasks are indexed. Moves the recurring tasks out of tasks, to have
+    // their occurrences made by makeOccurrences
+    private void takeRecurring(List<Task> loaded) {
+        for (Iterator<Task> i = loaded.iterator(); i.hasNext(); ) {
+            Task task = i.next();
+            if (task.getRecurrence() == null) continue;
+            recurringTasks.put(task, Collections.emptyList());
+            i.remove();
+        }
+    }
+
+    private void writeSnapshot(List<Task> tasks, long seq) throws IOException {
+        if (BINARY_FORMAT) BinaryTaskStore.write(binaryTasksFile, tasks, seq);
+        else TextTaskStore.write(tasksFile, tasks, seq);
+    }
+
+    private void appendJournal(List<String> records) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(journalFile.toFile(), true)))) {
+            for (String record : records) writer.println((++journalSeq) + "|" + record);
+            if (writer.checkError()) throw new IOException("Could not append to " + journalFile);
+            writesPerformed.incrementAndGet();
+        }
+    }
+
+    // Rewrite the journal without the records up to seq
+    private void trimJournal(long seq) throws IOException {
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        List<String> remaining = new ArrayList<>();
+        for (String record : Files.readAllLines(journalFile, Charset.defaultCharset())) {
+            if (recordSeq(record) > seq) remaining.add(record);
+        }
+        Files.write(temp, remaining, Charset.defaultCharset());
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Sequence number at the start of a journal record, or -1 for a torn record
+    private static long recordSeq(String record) {
+        int end = record.indexOf('|');
+        try {
+            return end > 0 ? Long.parseLong(record.substring(0, end)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Load the snapshot and replay the journal on top of it. Call once, before any changes
+    @SuppressWarnings("try") // fileLock is only held, not used
+    public void load() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try (FileChannel fileLock = lockTaskFiles()) {
+            if (SEGMENTED_FORMAT) {
+                loadSegments();
+            } else {
+                List<Task> loaded = new ArrayList<>();
+                boolean missingUids = loadAll(loaded);
+                takeRecurring(loaded);
+                for (Task task : loaded) addTask(task, true);
+                loaded = null; // With columnar storage, the loaded objects are garbage from here
+                makeOccurrences();
+                // Journal records name tasks by uid, so uids given out on loading have to be saved before any record is
+                if (missingUids && JOURNAL_MODE) {
+                    writeSnapshot(snapshotTasks(), journalSeq);
+                    if (Files.exists(journalFile)) trimJournal(journalSeq);
+                }
+                journalOffset = Files.exists(journalFile) ? Files.size(journalFile) : 0;
+                journalFileKey = fileKey(journalFile);
+            }
+            tasks.sort();
+            tasks.trimToSize();
+            snapshot = null;
+        } catch (IOException e) {
+            Metrics.error(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (SHARED_MODE) startWatching();
+
+        Metrics.record(LOAD_LATENCY, start);
+        long elapsed = System.nanoTime() - start;
+        int count = size();
+        LOGGER.info(String.format("Loaded %d tasks in %d ms (%.0f tasks/sec)",
+            count, TimeUnit.NANOSECONDS.toMillis(elapsed), count * 1e9 / Math.max(elapsed, 1)));
+        fireChanged();
+    }
+
+    // Snapshot plus journal, into loaded. Whether any of them had no uid yet
+    private boolean loadAll(List<Task> tasks) {
+        long snapshotSeq = 0;
+        boolean missingUids = false;
+        try {
+            TaskSnapshot loaded = readSnapshot();
+            tasks.addAll(loaded.tasks);
+            snapshotSeq = Math.max(loaded.seq, 0);
+            missingUids = loaded.missingUids;
+        } catch (IOException | UncheckedIOException e) {
+            Metrics.error(e);
+        }
+
+        journalSeq = snapshotSeq;
+        return replayJournal(tasks, snapshotSeq) || missingUids;
+    }
+
+    // Load the window around the current month. The first time segmented format is used, tasks.txt and its journal
+    // are split into month segments first (and left in place). Call with the write lock held
+    private void loadSegments() {
+        boolean migrate = !segments.exists() && (Files.exists(tasksFile) || Files.exists(binaryTasksFile));
+        try {
+            segments.open();
+            if (migrate) {
+                List<Task> loaded = new ArrayList<>();
+                loadAll(loaded);
+                takeRecurring(loaded);
+                segments.writeRecurring(new ArrayList<>(recurringTasks.keySet()));
+                Map<YearMonth, List<Task>> byMonth = new TreeMap<>();
+                for (Task task : loaded) byMonth.computeIfAbsent(SegmentedTaskStore.monthOf(task.getDueDay()), k -> new ArrayList<>()).add(task);
+                for (Map.Entry<YearMonth, List<Task>> month : byMonth.entrySet()) segments.write(month.getKey(), month.getValue());
+                LOGGER.info(String.format("Split %d tasks into %d month segments", segments.totalCount(), byMonth.size()));
+            } else {
+                for (Task task : segments.readRecurring()) recurringTasks.put(task, Collections.emptyList());
+            }
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+        loadWindow();
+        makeOccurrences();
+    }
+
+    // The snapshot, or no tasks if there isn't one yet.
+    // Falls back to tasks.txt when binary format is on but no tasks.bin has been written yet
+    private TaskSnapshot readSnapshot() throws IOException {
+        if (BINARY_FORMAT && Files.exists(binaryTasksFile)) return BinaryTaskStore.read(binaryTasksFile);
+        if (Files.exists(tasksFile)) return TextTaskStore.read(tasksFile);
+        return new TaskSnapshot();
+    }
+
+    // Apply journal records newer than the snapshot to the loaded tasks. Records are matched to tasks by uid, or by
+    // their text for records written before tasks had uids. Whether there were any of those
+    private boolean replayJournal(List<Task> tasks, long snapshotSeq) {
+        if (!Files.exists(journalFile)) return false;
+
+        Map<Long, Task> byUid = new LinkedHashMap<>();
+        for (Task task : tasks) byUid.put(task.getUid(), task);
+        // Tasks by their encoded line without the uid, built at the first record without one
+        Map<String, ArrayDeque<Task>> byLine = null;
+
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, Charset.defaultCharset())) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                long seq = recordSeq(record);
+                if (seq <= snapshotSeq) continue;
+                String[] parts = record.split("\\|", 3);
+                Task recorded = parseRecord(parts);
+                if (recorded == null) continue;
+                journalSeq = Math.max(journalSeq, seq);
+                if (hasUid(parts[2])) {
+                    applyRecord(byUid, parts[1], recorded);
+                    continue;
+                }
+
+                if (byLine == null) {
+                    byLine = new HashMap<>();
+                    for (Task task : byUid.values()) byLine.computeIfAbsent(encodeWithoutUid(task), k -> new ArrayDeque<>()).add(task);
+                }
+                if (parts[1].equals("ADD")) {
+                    byUid.put(recorded.getUid(), recorded);
+                    byLine.computeIfAbsent(parts[2], k -> new ArrayDeque<>()).add(recorded);
+                    continue;
+                }
+                ArrayDeque<Task> matches = byLine.get(parts[2]);
+                Task task = matches == null ? null : matches.poll();
+                if (task == null) continue;
+                if (parts[1].equals("REMOVE")) {
+                    byUid.remove(task.getUid());
+                } else if (parts[1].equals("TOGGLE")) {
+                    task.setCompleted(!task.isCompleted());
+                    byLine.computeIfAbsent(encodeWithoutUid(task), k -> new ArrayDeque<>()).add(task);
+                }
+            }
+        } catch (IOException e) {
+            Metrics.error(e);
+        }
+        tasks.clear();
+        tasks.addAll(byUid.values());
+        return byLine != null;
+    }
+
+    // The task in a journal record split into seq, op and task, or null if it isn't one
+    private static Task parseRecord(String[] parts) {
+        if (parts.length != 3) return null;
+        String[] fields = parts[2].split("\\|");
+        if (fields.length < 4 || fields.length > 6) return null;
+        try {
+            return TextTaskStore.parse(fields);
+        } catch (DateTimeException | IllegalArgumentException e) {
+            Metrics.error(e);
+            return null;
+        }
+    }
+
+    // Apply one journal record to the tasks, by uid. Applying a record again changes nothing
+    private static void applyRecord(Map<Long, Task> tasksByUid, String op, Task recorded) {
+        long uid = recorded.getUid();
+        if (op.equals("ADD")) {
+            tasksByUid.putIfAbsent(uid, recorded);
+        } else if (op.equals("REMOVE")) {
+            tasksByUid.remove(uid);
+        } else if (op.equals("TOGGLE")) {
+            // The record has the task as it was before, so an applied TOGGLE finds the task already the other way round.
+            // The task is replaced rather than changed, since the map may share it with the live list
+            Task task = tasksByUid.get(uid);
+            if (task != null && task.getRecurrence() != null) {
+                // A TOGGLE of an occurrence has the occurrence's day
+                int day = recorded.getDueDay();
+                if (task.getRecurrence().isCompleted(day) == recorded.isCompleted()) {
+                    Task toggled = task.copy();
+                    toggled.getRecurrence().setCompleted(day, !recorded.isCompleted());
+                    tasksByUid.put(uid, toggled);
+                }
+            } else if (task != null && task.isCompleted() == recorded.isCompleted()) {
+                tasksByUid.put(uid, new Task(task.getText(), !task.isCompleted(), task.getDueDay(), task.getPriority(), uid));
+            }
+        }
+    }
+
+    private static boolean hasUid(String encoded) {
+        return encoded.chars().filter(c -> c == '|').count() >= 4;
+    }
+
+    // How older journal records wrote a task
+    private static String encodeWithoutUid(Task task) {
+        String line = TextTaskStore.encode(task);
+        return line.substring(0, line.lastIndexOf('|'));
+    }
+
+    // Shared mode: the lock file's channel, holding a lock against other processes until it is closed. Null otherwise
+    private FileChannel lockTaskFiles() throws IOException {
+        if (!SHARED_MODE) return null;
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    // Identifies the file itself rather than its name, so a replacement can be told apart. Null if there is no file,
+    // or the file system has no such key
+    private static Object fileKey(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    // Shared mode: have the persistence thread merge in changes soon after another process writes the task files
+    private void startWatching() {
+        WatchService watching;
+        try {
+            watching = journalFile.getFileSystem().newWatchService();
+            journalFile.toAbsolutePath().getParent().register(watching, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            Metrics.error(e);
+            return;
+        }
+        watchService = watching;
+        Set<Path> watched = new HashSet<>(Arrays.asList(journalFile.getFileName(), tasksFile.getFileName(), binaryTasksFile.getFileName()));
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watching.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || watched.contains(event.context());
+                    }
+                    key.reset();
+                    if (changed) scheduleWrite();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+                // close() stops watching
+            }
+        }, "tasks-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Shared mode: bring the tasks here up to date with what other processes have written. That is normally the
+    // journal records past journalOffset; if another process has compacted the journal since, those records are gone,
+    // so it is the difference between the files and the tasks here instead. Runs on the persistence thread with the
+    // file lock held
+    private void mergeExternalChanges() throws IOException {
+        long size = Files.exists(journalFile) ? Files.size(journalFile) : 0;
+        boolean compacted = size < journalOffset || !Objects.equals(fileKey(journalFile), journalFileKey);
+        if (!compacted && size == journalOffset) return;
+
+        Map<Long, Task> current = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Task task : storedTasks()) current.put(task.getUid(), task);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, Task> external = new HashMap<>();
+        if (compacted) {
+            TaskSnapshot loaded = readSnapshot();
+            List<Task> reloaded = new ArrayList<>(loaded.tasks);
+            journalSeq = Math.max(journalSeq, loaded.seq);
+            replayJournal(reloaded, Math.max(loaded.seq, 0));
+            for (Task task : reloaded) external.put(task.getUid(), task);
+        } else {
+            external.putAll(current);
+            for (String record : readJournal(journalOffset, size)) {
+                String[] parts = record.split("\\|", 3);
+                Task recorded = parseRecord(parts);
+                if (recorded == null || !hasUid(parts[2])) continue;
+                journalSeq = Math.max(journalSeq, recordSeq(record));
+                applyRecord(external, parts[1], recorded);
+            }
+        }
+        mergeTasks(current, external, compacted);
+    }
+
+    // The journal records between two byte offsets
+    private List<String> readJournal(long from, long to) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining() && channel.read(bytes, from + bytes.position()) >= 0) { }
+        }
+        String records = new String(bytes.array(), 0, bytes.position(), Charset.defaultCharset());
+        return records.isEmpty() ? Collections.emptyList() : Arrays.asList(records.split("\\R"));
+    }
+
+    // Change the tasks here (current, by uid) to match the tasks in the files (external). Tasks with changes here that
+    // are still queued for the journal keep them; when keepUnsaved they aren't removed either, since a diff can't tell
+    // a task another process removed from one added here. A changed recurring task is replaced, occurrences and all
+    private void mergeTasks(Map<Long, Task> current, Map<Long, Task> external, boolean keepUnsaved) {
+        List<Task> added = new ArrayList<>();
+        List<Task> toggled = new ArrayList<>();
+        List<Task> removed = new ArrayList<>();
+        List<Task> replaced = new ArrayList<>(); // The external versions of changed recurring tasks
+        for (Task task : external.values()) {
+            Task here = current.get(task.getUid());
+            if (here == null) added.add(task);
+            else if (here.getRecurrence() != null) {
+                if (!TextTaskStore.encode(here).equals(TextTaskStore.encode(task))) replaced.add(task);
+            } else if (here.isCompleted() != task.isCompleted()) toggled.add(here);
+        }
+        for (Task here : current.values()) {
+            if (!external.containsKey(here.getUid())) removed.add(here);
+        }
+        if (added.isEmpty() && toggled.isEmpty() && removed.isEmpty() && replaced.isEmpty()) return;
+
+        int merged = 0;
+        lock.writeLock().lock();
+        try {
+            // Anything changed here since current was read is still queued, as this is the thread that writes the queue
+            Set<Long> unsaved;
+            synchronized (pendingJournal) {
+                unsaved = new HashSet<>(pendingUids);
+            }
+            boolean sort = added.size() + toggled.size() + removed.size() + replaced.size() > SORT_BATCH_TASKS;
+
+            Map<Integer, Task> removing = new HashMap<>();
+            for (Task task : removed) {
+                if (keepUnsaved && unsaved.contains(task.getUid())) continue;
+                if (collectRemoval(task, removing) != null) merged++;
+            }
+            List<Task> replacing = new ArrayList<>();
+            for (Task task : replaced) {
+                if (unsaved.contains(task.getUid())) continue;
+                if (collectRemoval(current.get(task.getUid()), removing) != null) replacing.add(task);
+            }
+            removeTasks(removing.values());
+            for (Task task : replacing) {
+                addRecurring(task, sort);
+                merged++;
+            }
+            for (Task read : toggled) {
+                Task task = tasks.current(read);
+                if (task == null || unsaved.contains(task.getUid())) continue;
+                updateCompleted(task, !task.isCompleted(), sort);
+                merged++;
+            }
+            for (Task task : added) {
+                if (task.getRecurrence() != null) addRecurring(task, sort);
+                else addTask(task, sort);
+                merged++;
+            }
+            if (sort) sortTasks();
+            if (merged > 0) snapshot = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (merged == 0) return;
+
+        externalChanges.addAndGet(merged);
+        LOGGER.info(String.format("Merged %d changes from other processes", merged));
+        fireChanged();
+    }
+
+    // Copy a task file from one format to the other. Files ending in .bin are binary, anything else is text
+    static void convertTaskFile(Path source, Path target) throws IOException {
+        TaskSnapshot loaded = isBinaryTaskFile(source) ? BinaryTaskStore.read(source) : TextTaskStore.read(source);
+        long seq = Math.max(loaded.seq, 0);
+        if (isBinaryTaskFile(target)) BinaryTaskStore.write(target, loaded.tasks, seq);
+        else TextTaskStore.write(target, loaded.tasks, seq);
+    }
+
+    private static boolean isBinaryTaskFile(Path path) {
+        return path.getFileName().toString().endsWith(".bin");
+    }
+}
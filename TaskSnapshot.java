@@ -0,0 +1,9 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Tasks read from a snapshot file (or one chunk of it)
+class TaskSnapshot {
+    final List<Task> tasks = new ArrayList<>();
+    long seq = -1; // Journal sequence number from the header, if there was one
+    boolean missingUids = false; // Some tasks were stored without a uid (older files) and were given new ones
+}
@@ -0,0 +1,127 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Counts over a task list for the summary panel: by completion, priority and month, and how many incomplete tasks
+// are overdue or due today. Lists past PARALLEL_CUTOFF tasks are counted in parallel, each worker counting part of the
+// list into its own Counts before they are merged; below it the fork-join overhead costs more than it saves
+final class TaskSummary {
+    static final int PARALLEL_CUTOFF = Integer.getInteger("todolist.parallelCutoff", 50_000);
+    private static final LatencyHistogram SUMMARY_LATENCY = Metrics.latency("summary.compute");
+
+    final int total;
+    final int completed;
+    final int overdue;
+    final int dueToday;
+    final int[] byPriority; // Indexed like Task.PRIORITIES, with any other priorities counted last
+    final Map<YearMonth, Integer> byMonth; // Months with at least one task, in order
+
+    private TaskSummary(Counts counts) {
+        total = counts.total;
+        completed = counts.completed;
+        overdue = counts.overdue;
+        dueToday = counts.dueToday;
+        byPriority = counts.byPriority;
+        Map<YearMonth, Integer> months = new TreeMap<>();
+        for (int i = 0; i < counts.byMonth.length; i++) {
+            if (counts.byMonth[i] > 0) months.put(YearMonth.of(Math.floorDiv(counts.firstMonth + i, 12), Math.floorMod(counts.firstMonth + i, 12) + 1), counts.byMonth[i]);
+        }
+        byMonth = Collections.unmodifiableMap(months);
+    }
+
+    static TaskSummary of(List<Task> tasks, LocalDate today) {
+        return of(tasks, today, tasks.size() >= PARALLEL_CUTOFF);
+    }
+
+    static TaskSummary of(List<Task> tasks, LocalDate today, boolean parallel) {
+        long start = System.nanoTime();
+        int todayDay = (int) today.toEpochDay();
+        Counts counts = (parallel ? tasks.parallelStream() : tasks.stream())
+            .collect(() -> new Counts(todayDay), Counts::add, Counts::merge);
+        TaskSummary summary = new TaskSummary(counts);
+        Metrics.record(SUMMARY_LATENCY, start);
+        return summary;
+    }
+
+    int inMonth(YearMonth month) {
+        return byMonth.getOrDefault(month, 0);
+    }
+
+    // Running counts for part of the list. Months are counted in an array that grows to cover the months seen,
+    // which is much cheaper per task than a map
+    private static final class Counts {
+        final int today;
+        int total;
+        int completed;
+        int overdue;
+        int dueToday;
+        final int[] byPriority = new int[Task.PRIORITIES.length + 1];
+        int firstMonth; // Months since year 0 of byMonth[0]
+        int[] byMonth = new int[0];
+        int month; // The month of the last task counted, months since year 0, and its days
+        int monthFirstDay = 0;
+        int monthEndDay = 0;
+
+        Counts(int today) {
+            this.today = today;
+        }
+
+        void add(Task task) {
+            total++;
+            int day = task.getDueDay();
+            if (task.isCompleted()) completed++;
+            else if (day < today) overdue++;
+            else if (day == today) dueToday++;
+            byPriority[priorityIndex(task.getPriority())]++;
+            // The list is sorted by day within completed and incomplete tasks, so the month is nearly always the last one
+            if (day < monthFirstDay || day >= monthEndDay) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                month = date.getYear() * 12 + date.getMonthValue() - 1;
+                monthFirstDay = day - date.getDayOfMonth() + 1;
+                monthEndDay = monthFirstDay + date.lengthOfMonth();
+            }
+            count(month, 1);
+        }
+
+        void merge(Counts other) {
+            total += other.total;
+            completed += other.completed;
+            overdue += other.overdue;
+            dueToday += other.dueToday;
+            for (int i = 0; i < byPriority.length; i++) byPriority[i] += other.byPriority[i];
+            for (int i = 0; i < other.byMonth.length; i++) {
+                if (other.byMonth[i] > 0) count(other.firstMonth + i, other.byMonth[i]);
+            }
+        }
+
+        private void count(int month, int count) {
+            if (byMonth.length == 0) {
+                firstMonth = month;
+                byMonth = new int[1];
+            } else if (month < firstMonth) {
+                int[] grown = new int[byMonth.length + firstMonth - month];
+                System.arraycopy(byMonth, 0, grown, firstMonth - month, byMonth.length);
+                byMonth = grown;
+                firstMonth = month;
+            } else if (month >= firstMonth + byMonth.length) {
+                byMonth = Arrays.copyOf(byMonth, month - firstMonth + 1);
+            }
+            byMonth[month - firstMonth] += count;
+        }
+
+        private static int priorityIndex(String priority) {
+            // Loaded tasks share the strings in Task.PRIORITIES
+            for (int i = 0; i < Task.PRIORITIES.length; i++) {
+                if (Task.PRIORITIES[i] == priority) return i;
+            }
+            for (int i = 0; i < Task.PRIORITIES.length; i++) {
+                if (Task.PRIORITIES[i].equals(priority)) return i;
+            }
+            return Task.PRIORITIES.length;
+        }
+    }
+}
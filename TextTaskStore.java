@@ -0,0 +1,232 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// The tasks.txt format: a "#journal|<seq>" header, then one text|completed|yyyy-MM-dd|priority|uid line per task,
+// with the uid in hex, and a Recurrence as a last field for recurring tasks. Lines from older files have no uid
+class TextTaskStore {
+    // tasks.txt is parsed in parallel chunks of about this many bytes
+    private static final int LOAD_CHUNK_BYTES = 4 << 20;
+    // Accepts the single-digit months and days SimpleDateFormat used to allow
+    private static final DateTimeFormatter LENIENT_DATE_FORMAT = DateTimeFormatter.ofPattern("y-M-d").withResolverStyle(ResolverStyle.LENIENT);
+    
+    // One line of tasks.txt. Nothing is escaped, so the text can't hold '|' or a line break: the add dialog and
+    // TaskImporter replace '|', and TaskApiServer rejects both
+    static String encode(Task task) {
+        return task.getText() + "|" + task.isCompleted() + "|" + task.getDueDate() + "|" + task.getPriority() // Include completion status
+            + "|" + Long.toHexString(task.getUid())
+            + (task.getRecurrence() == null ? "" : "|" + task.getRecurrence().encode());
+    }
+
+    // A task from the fields of one line. A task without a uid field gets a new uid. Throws DateTimeException or
+    // IllegalArgumentException for fields that can't be parsed
+    static Task parse(String[] parts) {
+        String taskText = parts[0];
+        boolean completed = Boolean.parseBoolean(parts[1]);
+        
+        // Parse dueDate
+        int dueDay = (int) LocalDate.parse(parts[2], LENIENT_DATE_FORMAT).toEpochDay();
+        
+        // Parse priority
+        String priority = parts[3];
+        
+        long uid = parts.length > 4 ? Long.parseUnsignedLong(parts[4], 16) : Task.newUid();
+        Recurrence recurrence = parts.length > 5 ? Recurrence.parse(parts[5]) : null;
+        return new Task(taskText, completed, dueDay, priority, uid, recurrence);
+    }
+
+    // Write the whole list to a temp file and move it over the target, so a crash mid-save leaves the old file intact.
+    // The header records the last journal record the snapshot already contains
+    static void write(Path target, List<Task> tasks, long seq) throws IOException {
+        Path temp = Paths.get(target + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile());
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)))) {
+            writer.println("#journal|" + seq);
+            for (Task task : tasks) writer.println(encode(task));
+            writer.flush();
+            if (writer.checkError()) throw new IOException("Could not write " + temp);
+            out.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The file is memory-mapped in line-aligned chunks that are parsed in parallel, then joined in file order
+    static TaskSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<TaskSnapshot> chunks = splitIntoChunks(channel).parallelStream()
+                .map(bounds -> parseChunk(channel, bounds[0], bounds[1]))
+                .collect(Collectors.toList());
+            
+            TaskSnapshot snapshot = new TaskSnapshot();
+            for (TaskSnapshot chunk : chunks) {
+                if (chunk.seq >= 0) snapshot.seq = chunk.seq;
+                snapshot.missingUids |= chunk.missingUids;
+                snapshot.tasks.addAll(chunk.tasks);
+            }
+            return snapshot;
+        }
+    }
+
+    // Byte ranges of about LOAD_CHUNK_BYTES, each ending just after a newline (or at the end of the file)
+    private static List<long[]> splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + LOAD_CHUNK_BYTES, size);
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = 0;
+                while (newline < read && probe.get(newline) != '\n') newline++;
+                end += Math.min(newline + 1, read);
+                if (newline < read) break;
+            }
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Runs on a worker thread, so it only touches the chunk it was given
+    private static TaskSnapshot parseChunk(FileChannel channel, long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        try {
+            channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).get(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        TaskSnapshot chunk = new TaskSnapshot();
+        int[] pipes = new int[5];
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            int pipeCount = 0;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                if (bytes[lineEnd] == '|') {
+                    if (pipeCount < pipes.length) pipes[pipeCount] = lineEnd;
+                    pipeCount++;
+                }
+                lineEnd++;
+            }
+            int nextLine = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+            
+            if (pipeCount >= 3 && pipeCount <= 5) {
+                Task task = parseTask(bytes, lineStart, pipes, pipeCount, lineEnd);
+                if (task != null) chunk.tasks.add(task);
+                if (pipeCount == 3) chunk.missingUids = true;
+            } else if (pipeCount == 1 && matches(bytes, lineStart, pipes[0], "#journal", false)) {
+                try {
+                    chunk.seq = Long.parseLong(new String(bytes, pipes[0] + 1, lineEnd - pipes[0] - 1, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    Metrics.error(e);
+                }
+            }
+            lineStart = nextLine;
+        }
+        return chunk;
+    }
+
+    // Parse text|completed|yyyy-MM-dd|priority[|uid[|recurrence]] from a line of bytes, or null if it isn't a valid task
+    private static Task parseTask(byte[] bytes, int start, int[] pipes, int pipeCount, int end) {
+        Recurrence recurrence = null;
+        if (pipeCount == 5) {
+            try {
+                recurrence = Recurrence.parse(new String(bytes, pipes[4] + 1, end - pipes[4] - 1, StandardCharsets.US_ASCII));
+            } catch (DateTimeException | IllegalArgumentException e) {
+                return null;
+            }
+            end = pipes[4];
+        }
+        long uid = Task.newUid();
+        if (pipeCount >= 4) {
+            try {
+                uid = Long.parseUnsignedLong(new String(bytes, pipes[3] + 1, end - pipes[3] - 1, StandardCharsets.US_ASCII), 16);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            end = pipes[3];
+        }
+        if (pipes[2] + 1 == end) return null; // Empty priority, which split() would have dropped
+        LocalDate dueDate = parseDate(bytes, pipes[1] + 1, pipes[2]);
+        if (dueDate == null) return null;
+        
+        String taskText = new String(bytes, start, pipes[0] - start, Charset.defaultCharset());
+        boolean completed = matches(bytes, pipes[0] + 1, pipes[1], "true", true);
+        String priority = null;
+        for (String value : Task.PRIORITIES) {
+            if (matches(bytes, pipes[2] + 1, end, value, false)) {
+                priority = value;
+                break;
+            }
+        }
+        if (priority == null) priority = new String(bytes, pipes[2] + 1, end - pipes[2] - 1, Charset.defaultCharset());
+        
+        return new Task(taskText, completed, (int) dueDate.toEpochDay(), priority, uid, recurrence);
+    }
+
+    // Whether bytes[from, to) is the ASCII string value
+    private static boolean matches(byte[] bytes, int from, int to, String value, boolean ignoreCase) {
+        if (to - from != value.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = (char) bytes[from + i];
+            if (ignoreCase ? Character.toLowerCase(c) != Character.toLowerCase(value.charAt(i)) : c != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Parse a yyyy-MM-dd date, rolling over out of range days like SimpleDateFormat does. Null if it isn't a date
+    private static LocalDate parseDate(byte[] bytes, int from, int to) {
+        if (to - from == 10 && bytes[from + 4] == '-' && bytes[from + 7] == '-') {
+            int year = parseDigits(bytes, from, from + 4);
+            int month = parseDigits(bytes, from + 5, from + 7);
+            int day = parseDigits(bytes, from + 8, from + 10);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1) {
+                return LocalDate.of(year, month, 1).plusDays(day - 1);
+            }
+        }
+        try {
+            return LocalDate.parse(new String(bytes, from, to - from, StandardCharsets.US_ASCII), LENIENT_DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Non-negative decimal number in bytes[from, to), or -1
+    private static int parseDigits(byte[] bytes, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -1,43 +1,77 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
-import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellRenderer;
 
 public class TodoListApp extends JFrame {
     
     private JList<Task> toDoList;
+    private JTextField searchField;
     private JPanel calendarPanel;
     private JTable calendarTable;
     private JComboBox<String> monthComboBox;
     private JSpinner yearSpinner;
     
-    private DefaultListModel<Task> toDoListModel = new DefaultListModel<>();
     private DefaultTableModel calendarModel;
     
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-    private final SimpleDateFormat prettyDateFormat = new SimpleDateFormat("MMM d, yyyy");
-    private final List<Task> originalTasks = new ArrayList<>();;
-    private Date selectedDate = null;
+    private final DateTimeFormatter prettyDateFormat = DateTimeFormatter.ofPattern("MMM d, yyyy");
+    // Layout and task counts of recently shown months, dropped whenever tasks change
+    private final LruCache<YearMonth, MonthGrid> monthGrids = new LruCache<>("Month grids", 24);
+    // prettyDateFormat output by epoch day
+    private final LruCache<Integer, String> dateLabels = new LruCache<>("Date labels", 4096);
+    // Owns the tasks and their files; this frame only shows them
+    private final TaskRepository repository = new TaskRepository(Paths.get(""));
+    private final TaskListModel toDoListModel = new TaskListModel();
+    private FilterOptions currentFilter = new FilterOptions(); // What the task list is showing
+    private LocalDate selectedDate = null;
     private final String[] months = {"January", "February", "March", "April", "May", "June", "July", "August", "September", "October", "November", "December"};
-    String[] priorityValues = {"Low", "Medium", "High"};
+    static final String[] priorityValues = Task.PRIORITIES;
+    
+    private static final LatencyHistogram CALENDAR_CELL_LATENCY = Metrics.latency("render.calendarCell");
+    private static final LatencyHistogram LIST_ROW_LATENCY = Metrics.latency("render.listRow");
+    private static final LatencyHistogram SHOW_TASKS_LATENCY = Metrics.latency("ui.showTasks");
+    private static final int MAX_REMINDERS_LISTED = 10;
+    private final EdtMonitor edtMonitor = new EdtMonitor();
+    private TaskApiServer apiServer; // Only with -Dtodolist.apiPort
+    private SummaryPanel summaryPanel;
+    private ReminderScheduler reminders; // Unless -Dtodolist.reminders=false
     
     public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("--convert")) {
+            try {
+                TaskRepository.convertTaskFile(Paths.get(args[1]), Paths.get(args[2]));
+            } catch (IOException e) {
+                Metrics.error(e);
+                System.exit(1);
+            }
+            return;
+        }
         setLookAndFeel("Nimbus");
+        EdtWatchdog.install();
         SwingUtilities.invokeLater(() -> new TodoListApp());
     }
     
@@ -56,8 +90,27 @@ public class TodoListApp extends JFrame {
     
     public TodoListApp() {
         initComponents();
-        loadTasksFromFile();
+        // Changes may come from other threads, so redraw on the EDT
+        repository.addListener(() -> {
+            if (SwingUtilities.isEventDispatchThread()) tasksChangedUpdate();
+            else SwingUtilities.invokeLater(this::tasksChangedUpdate);
+        });
+        repository.load();
+        if (TaskApiServer.PORT >= 0) {
+            try {
+                apiServer = new TaskApiServer(repository, TaskApiServer.PORT);
+                apiServer.start();
+            } catch (IOException e) {
+                Metrics.error(e);
+            }
+        }
+        edtMonitor.start();
         setVisible(true);
+        if (ReminderScheduler.ENABLED) {
+            reminders = new ReminderScheduler(repository, Clock.systemDefaultZone(), ReminderScheduler.REMINDER_TIME,
+                due -> SwingUtilities.invokeLater(() -> showReminders(due)));
+            reminders.start();
+        }
     }
 
     private void initComponents() {
@@ -67,6 +120,47 @@ public class TodoListApp extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         
+        // Runs before EXIT_ON_CLOSE exits, so pending saves make it to disk
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                edtMonitor.stop();
+                if (apiServer != null) apiServer.stop();
+                if (reminders != null) reminders.stop();
+                repository.close();
+                Logger logger = Logger.getLogger(TodoListApp.class.getName());
+                logger.info(monthGrids.toString());
+                logger.info(dateLabels.toString());
+            }
+        });
+        
+        // Hidden diagnostics window
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control shift D"), "diagnostics");
+        getRootPane().getActionMap().put("diagnostics", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new DiagnosticsDialog().setVisible(true);
+            }
+        });
+        
+        // Undo and redo the last add, remove or completion
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Z"), "undo");
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Y"), "redo");
+        getRootPane().getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                EdtWatchdog.action("undo");
+                if (!repository.undo()) Toolkit.getDefaultToolkit().beep();
+            }
+        });
+        getRootPane().getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                EdtWatchdog.action("redo");
+                if (!repository.redo()) Toolkit.getDefaultToolkit().beep();
+            }
+        });
+        
         // Add calendar panel
         calendarPanel = new CalendarPanel();
         add(calendarPanel, BorderLayout.NORTH);
@@ -82,6 +176,10 @@ public class TodoListApp extends JFrame {
         JButton filterMediumPriorityButton = new JButton("Med Priority");
         JButton filterHighPriorityButton = new JButton("High Priority");
     
+        JButton completeSelectedButton = new JButton("Mark Complete");
+        JButton removeCompletedButton = new JButton("Remove Completed");
+        JButton importButton = new JButton("Import...");
+    
         JPanel controlPanel = new JPanel();
         controlPanel.setLayout(new BoxLayout(controlPanel, BoxLayout.X_AXIS));
         controlPanel.add(addButton);
@@ -95,25 +193,32 @@ public class TodoListApp extends JFrame {
         priorityPanel.add(filterLowPriorityButton);
         priorityPanel.add(filterMediumPriorityButton);
         priorityPanel.add(filterHighPriorityButton);
+        
+        JPanel bulkPanel = new JPanel();
+        bulkPanel.setLayout(new BoxLayout(bulkPanel, BoxLayout.X_AXIS));
+        bulkPanel.add(completeSelectedButton);
+        bulkPanel.add(removeCompletedButton);
+        bulkPanel.add(importButton);
 
         JPanel masterPanel = new JPanel();
         masterPanel.setLayout(new BoxLayout(masterPanel, BoxLayout.Y_AXIS));
         masterPanel.add(controlPanel);
         masterPanel.add(priorityPanel);
+        masterPanel.add(bulkPanel);
         
         // Ensure there is a gap between bottom of master panel and bottom of UI
         masterPanel.addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-                masterPanel.setPreferredSize(new Dimension(masterPanel.getWidth(), controlPanel.getHeight() + priorityPanel.getHeight() + 4));
+                masterPanel.setPreferredSize(new Dimension(masterPanel.getWidth(), controlPanel.getHeight() + priorityPanel.getHeight() + bulkPanel.getHeight() + 4));
             }
         });
 
         add(masterPanel, BorderLayout.SOUTH);
     
         // Control panel functionality
-        addButton.addActionListener(e -> showAddTaskMenu());
-        removeButton.addActionListener(e -> removeSelectedTask());
+        addButton.addActionListener(e -> { EdtWatchdog.action("add"); showAddTaskMenu(); });
+        removeButton.addActionListener(e -> { EdtWatchdog.action("remove"); removeSelectedTask(); });
         filterCompletedButton.addActionListener(e -> filterTasks(new FilterOptions(true, false)));
         filterIncompleteButton.addActionListener(e -> filterTasks(new FilterOptions(false, true)));
         showAllButton.addActionListener(e -> filterTasks(new FilterOptions()));
@@ -122,9 +227,18 @@ public class TodoListApp extends JFrame {
         filterMediumPriorityButton.addActionListener(e -> filterTasks(new FilterOptions(null, "medium")));
         filterHighPriorityButton.addActionListener(e -> filterTasks(new FilterOptions(null, "high")));
         
+        completeSelectedButton.addActionListener(e -> { EdtWatchdog.action("mark complete"); completeSelectedTasks(); });
+        removeCompletedButton.addActionListener(e -> { EdtWatchdog.action("remove completed"); removeCompletedTasks(); });
+        importButton.addActionListener(e -> { EdtWatchdog.action("import"); importTasks(); });
+        
         // Set up todo list
         toDoList = new JList<>(toDoListModel);
-        toDoList.setCellRenderer(new CheckboxListCellRenderer());
+        CheckboxListCellRenderer cellRenderer = new CheckboxListCellRenderer();
+        toDoList.setCellRenderer(cellRenderer);
+        // All rows are the same height, so JList doesn't have to measure every row after a filter
+        toDoList.setFixedCellHeight(cellRenderer.getPreferredSize().height);
+        // Nor measure every row for the widest, which with columnar storage would make a Task for every row
+        if (TaskRepository.COLUMNAR_STORAGE) toDoList.setFixedCellWidth(cellRenderer.getPreferredSize().width);
         
         toDoList.addMouseListener(new MouseAdapter() {
             @Override 
@@ -132,19 +246,39 @@ public class TodoListApp extends JFrame {
                 int index = toDoList.locationToIndex(e.getPoint());
                 if (index == -1) return;
                 
-                Task task = toDoListModel.get(index);
+                Task task = toDoListModel.getElementAt(index);
                 // Toggle selected only if checkbox area clicked
                 if (e.getPoint().x <= 32) {
-                    task.setCompleted(!task.isCompleted());
-                    sortTasks();
-                    tasksChangedUpdate();
+                    EdtWatchdog.action("checkbox toggle");
+                    currentFilter = new FilterOptions();
+                    repository.setCompleted(task, !task.isCompleted());
                 }
                 
                 toDoList.repaint();
             }
         });
         
-        add(new JScrollPane(toDoList), BorderLayout.CENTER);
+        // Search box above the list, applied on top of the other filters as you type
+        searchField = new JTextField();
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { search(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { search(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { search(); }
+        });
+        
+        JPanel searchPanel = new JPanel(new BorderLayout());
+        searchPanel.add(new JLabel(" Search: "), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        
+        JPanel listPanel = new JPanel(new BorderLayout());
+        listPanel.add(searchPanel, BorderLayout.NORTH);
+        listPanel.add(new JScrollPane(toDoList), BorderLayout.CENTER);
+        summaryPanel = new SummaryPanel();
+        listPanel.add(summaryPanel, BorderLayout.SOUTH);
+        add(listPanel, BorderLayout.CENTER);
     }
     
     // The calender element and its functionality
@@ -163,12 +297,12 @@ public class TodoListApp extends JFrame {
         
             monthComboBox = new JComboBox<>(months);
             monthComboBox.setSelectedIndex(currentMonth);
-            monthComboBox.addActionListener(e -> updateCalendar());
+            monthComboBox.addActionListener(e -> showSelectedMonth());
             
             SpinnerNumberModel yearModel = new SpinnerNumberModel(currentYear , currentYear - 100, currentYear + 100, 1);
             yearSpinner = new JSpinner(yearModel);
             yearSpinner.setEditor(new JSpinner.NumberEditor(yearSpinner, "#"));
-            yearSpinner.addChangeListener(e -> updateCalendar());
+            yearSpinner.addChangeListener(e -> showSelectedMonth());
 
             JButton todayButton = new JButton("Today");
             todayButton.addActionListener(e -> {
@@ -197,16 +331,13 @@ public class TodoListApp extends JFrame {
                     int row = calendarTable.rowAtPoint(evt.getPoint());
                     int col = calendarTable.columnAtPoint(evt.getPoint());
                     if (row >= 0 && col >= 0) {
-                        Calendar cal = Calendar.getInstance();
-                        cal.set(Calendar.MONTH, monthComboBox.getSelectedIndex());
-                        cal.set(Calendar.YEAR, (Integer) yearSpinner.getValue());
-                        cal.set(Calendar.DAY_OF_MONTH, 1);
+                        EdtWatchdog.action("calendar day");
+                        LocalDate firstOfMonth = LocalDate.of((Integer) yearSpinner.getValue(), monthComboBox.getSelectedIndex() + 1, 1);
 
-                        int firstDayOfMonth = cal.get(Calendar.DAY_OF_WEEK) - 1;  // 1st day of the month
+                        int firstDayOfMonth = firstOfMonth.getDayOfWeek().getValue() % 7;  // 1st day of the month, Sunday = 0
                         int day = 1 + (row * 7) + col - firstDayOfMonth;
 
-                        cal.set(Calendar.DATE, day);
-                        selectedDate = cal.getTime();
+                        selectedDate = firstOfMonth.plusDays(day - 1);
 
                         filterTasks(new FilterOptions(selectedDate));
                     }
@@ -220,7 +351,7 @@ public class TodoListApp extends JFrame {
             calendarModel = new DefaultTableModel(new Object[][]{}, new String[]{"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"});
             calendarModel.setRowCount(6);
             calendarTable.setModel(calendarModel);
-            DayRenderer customRenderer = new DayRenderer();
+            DayRenderer customRenderer = new DayRenderer(monthGrids, repository, TodoListApp.this::shownMonth);
             for (int i = 0; i < calendarTable.getColumnCount(); i++) {
                 calendarTable.getColumnModel().getColumn(i).setCellRenderer(customRenderer);
             }     
@@ -237,17 +368,37 @@ public class TodoListApp extends JFrame {
         }
     }
     
+    // The month picked in the calendar
+    private YearMonth shownMonth() {
+        return YearMonth.of((Integer) yearSpinner.getValue(), monthComboBox.getSelectedIndex() + 1);
+    }
+    
+    // Have the repository load the month picked in the calendar, then redraw it
+    private void showSelectedMonth() {
+        EdtWatchdog.action("month change");
+        repository.showMonth(shownMonth());
+        updateCalendar();
+        summaryPanel.showSummary();
+    }
+    
     // Should be called whenever the calendar needs to be updated/changed
     private void updateCalendar() {
         calendarModel.fireTableDataChanged();
     }
     
-    //  Renderer for each cell (day) in calendary
-    private class DayRenderer extends JPanel implements TableCellRenderer {
+    //  Renderer for each cell (day) in calendary. What it shows is passed in rather than taken from the frame, so
+    // TaskEngineBenchmark can render a month without one
+    static class DayRenderer extends JPanel implements TableCellRenderer {
         JLabel dayLabel;
         JLabel notifLabel;
-
-        public DayRenderer() {
+        private final LruCache<YearMonth, MonthGrid> monthGrids;
+        private final TaskRepository repository;
+        private final Supplier<YearMonth> shownMonth;
+
+        DayRenderer(LruCache<YearMonth, MonthGrid> monthGrids, TaskRepository repository, Supplier<YearMonth> shownMonth) {
+            this.monthGrids = monthGrids;
+            this.repository = repository;
+            this.shownMonth = shownMonth;
             initComponents();
         }
         
@@ -273,6 +424,7 @@ public class TodoListApp extends JFrame {
 
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {         
+            long start = System.nanoTime();
             setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
 
             // Set background on border based on selected, or even/odd row
@@ -285,53 +437,76 @@ public class TodoListApp extends JFrame {
                 setBackground(new Color(242,242,242));
             }
 
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.MONTH, monthComboBox.getSelectedIndex());
-            cal.set(Calendar.YEAR, (Integer) yearSpinner.getValue());
-            cal.set(Calendar.DAY_OF_MONTH, 1);
-
-            int firstDayOfMonth = cal.get(Calendar.DAY_OF_WEEK) - 1;  // 1st day of the month
-            int daysInMonth = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
+            MonthGrid grid = monthGrids.get(shownMonth.get(), m -> new MonthGrid(m, repository));
 
             // Calculate day based on row and column
-            int day = 1 + (row * 7) + column - firstDayOfMonth;
-            cal.set(Calendar.DAY_OF_MONTH, day);
+            int cell = (row * 7) + column;
+            int day = 1 + cell - grid.firstDayOfMonth;
             
-            dayLabel.setText((day > 0 && day <= daysInMonth) ? ("" + day) : "");
+            dayLabel.setText((day > 0 && day <= grid.daysInMonth) ? ("" + day) : "");
             
-            // Get tasks on this day for notif label
-            int matchingTasks = 0;
-            for (Task task : originalTasks) {
-                if (isSameDay(task.getDueDate(), cal.getTime())) 
-                    matchingTasks++;
-            }
+            // Tasks on this day for notif label
+            int matchingTasks = grid.counts[cell];
             
             notifLabel.setText(matchingTasks > 0 ? ("" + matchingTasks) : "");
+            Metrics.record(CALENDAR_CELL_LATENCY, start);
             return this;
         }
     }
     
-    // Data for each task
-    class Task {
-        public final String text;
-        private boolean completed;
-        private final Date dueDate;
-        private String priority;
-
-        public Task(String text, boolean completed, Date dueDate, String priority) {
-            this.text = text;
-            this.completed = completed;
-            this.dueDate = dueDate;
-            this.priority = priority;
+    // One month of the calendar: where its first day falls and how many tasks are due on the day in each of the 42 cells
+    static class MonthGrid {
+        final int firstDayOfMonth; // Sunday = 0
+        final int daysInMonth;
+        final int[] counts = new int[42];
+        
+        MonthGrid(YearMonth month, TaskRepository repository) {
+            LocalDate firstOfMonth = month.atDay(1);
+            firstDayOfMonth = firstOfMonth.getDayOfWeek().getValue() % 7;
+            daysInMonth = month.lengthOfMonth();
+            int firstCell = (int) firstOfMonth.toEpochDay() - firstDayOfMonth;
+            for (int cell = 0; cell < counts.length; cell++) counts[cell] = repository.countOnDay(firstCell + cell);
         }
-
-        public String getText() { return text; }
-        public boolean isCompleted() { return completed; }
-        public void setCompleted(boolean completed) { this.completed = completed; }
-        public Date getDueDate() { return dueDate; }
-        public String getPriority() { return priority; }
     }
-
+    
+    // List model over a TaskRepository.View, so a filter or change swaps in a new view with a single event
+    // rather than one event per row
+    static class TaskListModel extends AbstractListModel<Task> {
+        private TaskRepository.View view = TaskRepository.View.EMPTY;
+        
+        @Override
+        public int getSize() {
+            return view.size();
+        }
+        
+        @Override
+        public Task getElementAt(int index) {
+            return view.get(index);
+        }
+        
+        // Fires events for just the rows that differ: one insert for an added task, one removal for a removed one,
+        // and one change spanning the rows a toggled task moved across, or just its row if it stayed (rows are compared
+        // with their completed flags as each view was taken). Finding them compares the views row by row from both
+        // ends, O(n) for a change in the middle, but the list only repaints the rows in the events. With columnar
+        // storage the rows are compared without making their Task objects
+        void setView(TaskRepository.View newView) {
+            TaskRepository.View oldView = view;
+            int oldSize = oldView.size(), newSize = newView.size();
+            int same = Math.min(oldSize, newSize);
+            int prefix = 0;
+            while (prefix < same && oldView.sameTask(prefix, newView, prefix)) prefix++;
+            int suffix = 0;
+            while (suffix < same - prefix && oldView.sameTask(oldSize - 1 - suffix, newView, newSize - 1 - suffix)) suffix++;
+            view = newView;
+            
+            int oldEnd = oldSize - suffix, newEnd = newSize - suffix; // Exclusive ends of the rows that differ
+            int changedEnd = Math.min(oldEnd, newEnd);
+            if (changedEnd > prefix) fireContentsChanged(this, prefix, changedEnd - 1);
+            if (newEnd > oldEnd) fireIntervalAdded(this, changedEnd, newEnd - 1);
+            else if (oldEnd > newEnd) fireIntervalRemoved(this, changedEnd, oldEnd - 1);
+        }
+    }
+    
     // Renderer for each task in the list
     class CheckboxListCellRenderer extends JPanel implements ListCellRenderer<Task> {
         private final JLabel label;
@@ -365,12 +540,14 @@ public class TodoListApp extends JFrame {
 
         @Override
         public Component getListCellRendererComponent(JList<? extends Task> list, Task value, int index, boolean isSelected, boolean cellHasFocus) {
+            long start = System.nanoTime();
             // Set checkbox based on task completion
             checkBox.setSelected(value.isCompleted());
             checkBox.setEnabled(list.isEnabled());
 
-            label.setText(value.getText());
-            dueDateLabel.setText(prettyDateFormat.format(value.getDueDate()));
+            // Occurrences of a recurring task are marked as such
+            label.setText(value.getSeries() == null ? value.getText() : "\u21bb " + value.getText());
+            dueDateLabel.setText(dateLabels.get(value.getDueDay(), day -> prettyDateFormat.format(LocalDate.ofEpochDay(day))));
 
             // Sed border and background color for selection
             if (isSelected) {
@@ -381,39 +558,111 @@ public class TodoListApp extends JFrame {
                 setBackground(new Color(242,242,242));
             }
 
+            Metrics.record(LIST_ROW_LATENCY, start);
             return this;
         }
     }
     
+    // Totals under the task list. They are counted on a background thread from the repository's snapshot, and at
+    // most one count is queued however fast the tasks change
+    private class SummaryPanel extends JPanel {
+        private final JLabel totalsLabel = new JLabel();
+        private final JLabel breakdownLabel = new JLabel();
+        private final ExecutorService counter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tasks-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final AtomicBoolean countQueued = new AtomicBoolean();
+        private volatile TaskSummary summary; // The latest count, replaced whole
+        
+        SummaryPanel() {
+            setLayout(new GridLayout(2, 1));
+            setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+            add(totalsLabel);
+            add(breakdownLabel);
+        }
+        
+        // Count the tasks again soon
+        void refresh() {
+            if (!countQueued.compareAndSet(false, true)) return;
+            counter.execute(() -> {
+                countQueued.set(false);
+                summary = TaskSummary.of(repository.snapshot(), LocalDate.now());
+                SwingUtilities.invokeLater(this::showSummary);
+            });
+        }
+        
+        // Show the latest count, with the month shown in the calendar
+        void showSummary() {
+            TaskSummary current = summary;
+            if (current == null) return;
+            YearMonth month = shownMonth();
+            totalsLabel.setText(String.format("%,d tasks, %,d done, %,d overdue, %,d due today",
+                current.total, current.completed, current.overdue, current.dueToday));
+            StringBuilder breakdown = new StringBuilder();
+            for (int i = Task.PRIORITIES.length - 1; i >= 0; i--) breakdown.append(String.format("%s %,d, ", Task.PRIORITIES[i], current.byPriority[i]));
+            breakdown.append(String.format("%,d in %s %d", current.inMonth(month), months[month.getMonthValue() - 1], month.getYear()));
+            breakdownLabel.setText(breakdown.toString());
+        }
+    }
+    
+    // Latency percentiles (including EDT stalls), counters and cache statistics, refreshed every second
+    private class DiagnosticsDialog extends JDialog {
+        private final JTextArea report = new JTextArea(32, 72);
+        private final Timer refreshTimer = new Timer(1000, e -> refresh());
+        
+        public DiagnosticsDialog() {
+            super(TodoListApp.this, "Diagnostics", false);
+            report.setEditable(false);
+            report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            add(new JScrollPane(report), BorderLayout.CENTER);
+            
+            setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    refreshTimer.stop();
+                }
+            });
+            
+            refresh();
+            refreshTimer.start();
+            pack();
+            setLocationRelativeTo(TodoListApp.this);
+        }
+        
+        private void refresh() {
+            report.setText(Metrics.report() + "\n" + monthGrids + "\n" + dateLabels + "\n");
+        }
+    }
+    
     // The content that is displayed with the add task dialog
     private class AddTaskMenu extends JPanel {
         public JTextField descriptionField;
-        private JComboBox monthField;
-        private JSpinner dayField;
-        private JSpinner yearField;
+        private DatePicker dateField;
         private JComboBox<String> priorityField;
+        private JComboBox<String> repeatField;
+        private JCheckBox endsField;
+        private DatePicker untilField;
         
         public AddTaskMenu() {
             initComponents();
         }
         
-        // Get date from 3 components
-        public Date getDate() {
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.MONTH, monthField.getSelectedIndex());
-            cal.set(Calendar.YEAR, (Integer) yearField.getValue());
-            cal.set(Calendar.DAY_OF_MONTH, (Integer) dayField.getValue());
-            
-            return cal.getTime();
+        public LocalDate getDate() {
+            return dateField.getDate();
         }
         
-        private void initComponents() {
-            Calendar calendar = Calendar.getInstance();
-            int currentMonth = calendar.get(Calendar.MONTH);
-            int currentDay = Calendar.getInstance().get(Calendar.DAY_OF_MONTH);
-            int currentYear = Calendar.getInstance().get(Calendar.YEAR);
+        // How the task repeats, or null for a one-off task
+        public Recurrence getRecurrence() {
+            if (repeatField.getSelectedIndex() == 0) return null;
+            Recurrence.Frequency frequency = Recurrence.Frequency.values()[repeatField.getSelectedIndex() - 1];
+            return new Recurrence(frequency, endsField.isSelected() ? (int) untilField.getDate().toEpochDay() : Recurrence.NO_END);
+        }
         
-            setLayout(new GridLayout(4, 1));
+        private void initComponents() {
+            setLayout(new GridLayout(6, 1));
             
             JLabel taskLabel = new JLabel("Task: ");
             taskLabel.setFont(new Font(taskLabel.getFont().getName(), Font.BOLD, 12));
@@ -433,31 +682,91 @@ public class TodoListApp extends JFrame {
             dateLabel.setFont(new Font(dateLabel.getFont().getName(), Font.BOLD, 12));
             add(dateLabel);
             
+            dateField = new DatePicker();
+            add(dateField);
+            
+            JLabel repeatLabel = new JLabel("Repeats: ");
+            repeatLabel.setFont(new Font(repeatLabel.getFont().getName(), Font.BOLD, 12));
+            add(repeatLabel);
+            
+            repeatField = new JComboBox<>(new String[] {"Never", "Daily", "Weekly", "Monthly"});
+            add(repeatField);
+            
+            endsField = new JCheckBox("Until: ");
+            endsField.setFont(new Font(endsField.getFont().getName(), Font.BOLD, 12));
+            add(endsField);
+            
+            untilField = new DatePicker();
+            add(untilField);
+            
+            // The end date only matters for a task that repeats and has one
+            Runnable updateEnabled = () -> {
+                endsField.setEnabled(repeatField.getSelectedIndex() > 0);
+                untilField.setEnabled(endsField.isEnabled() && endsField.isSelected());
+            };
+            repeatField.addActionListener(e -> updateEnabled.run());
+            endsField.addActionListener(e -> updateEnabled.run());
+            updateEnabled.run();
+        }
+    }
+    
+    // Month, day and year fields, starting at today
+    private class DatePicker extends JPanel {
+        private final JComboBox<String> monthField;
+        private final JSpinner dayField;
+        private final JSpinner yearField;
+        
+        DatePicker() {
+            Calendar calendar = Calendar.getInstance();
+            int currentYear = calendar.get(Calendar.YEAR);
+            
             monthField = new JComboBox<>(months);
-            monthField.setSelectedIndex(currentMonth);
+            monthField.setSelectedIndex(calendar.get(Calendar.MONTH));
             
             SpinnerNumberModel dayModel = new SpinnerNumberModel(1 , 1, 31, 1);
             dayField = new JSpinner(dayModel);
-            dayField.setValue(currentDay); 
+            dayField.setValue(calendar.get(Calendar.DAY_OF_MONTH)); 
             
             SpinnerNumberModel yearModel = new SpinnerNumberModel(currentYear , currentYear - 100, currentYear + 100, 1);
             yearField = new JSpinner(yearModel);
             yearField.setEditor(new JSpinner.NumberEditor(yearField, "#"));
             
-            JPanel datePicker = new JPanel();
-            datePicker.setLayout(new BoxLayout(datePicker, BoxLayout.X_AXIS));
-            datePicker.add(monthField);
-            datePicker.add(dayField);
-            datePicker.add(yearField);
-            
-            add(datePicker);
+            setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
+            add(monthField);
+            add(dayField);
+            add(yearField);
+        }
+        
+        // Days past the end of the month roll over into the next one
+        LocalDate getDate() {
+            LocalDate firstOfMonth = LocalDate.of((Integer) yearField.getValue(), monthField.getSelectedIndex() + 1, 1);
+            return firstOfMonth.plusDays((Integer) dayField.getValue() - 1);
+        }
+        
+        @Override
+        public void setEnabled(boolean enabled) {
+            super.setEnabled(enabled);
+            monthField.setEnabled(enabled);
+            dayField.setEnabled(enabled);
+            yearField.setEnabled(enabled);
         }
     }
     
     // Should be called whenever tasks change
     private void tasksChangedUpdate() {
-        saveTasksToFile(); 
+        monthGrids.clear();
+        showTasks();
         updateCalendar();
+        summaryPanel.refresh();
+    }
+    
+    // Show the tasks matching currentFilter and the search box
+    private void showTasks() {
+        long start = System.nanoTime();
+        currentFilter.text = searchField.getText();
+        toDoList.clearSelection();
+        toDoListModel.setView(repository.view(currentFilter));
+        Metrics.record(SHOW_TASKS_LATENCY, start);
     }
     
     // Show a custom dialog for adding a task
@@ -472,138 +781,82 @@ public class TodoListApp extends JFrame {
         );
 
         if (result == JOptionPane.OK_OPTION) {
-            String taskDescription = dialogPanel.descriptionField.getText();
+            // '|' separates the fields of tasks.txt and journal records, so it is replaced like TaskImporter does
+            String taskDescription = dialogPanel.descriptionField.getText().replace('|', '/');
 
             if (!taskDescription.isEmpty()) {
-                Date dueDate = dialogPanel.getDate();
+                LocalDate dueDate = dialogPanel.getDate();
                 String priority = (String) dialogPanel.priorityField.getSelectedItem();
-                Task task = new Task(taskDescription, false, dueDate, priority);
-                toDoListModel.addElement(task);
-                originalTasks.add(task); // Add the task to originalTasks
-                sortTasks();
-                tasksChangedUpdate();
+                Recurrence recurrence = dialogPanel.getRecurrence();
+                Task task = recurrence == null ? new Task(taskDescription, false, (int) dueDate.toEpochDay(), priority)
+                    : new Task(taskDescription, false, (int) dueDate.toEpochDay(), priority, Task.newUid(), recurrence);
+                currentFilter = new FilterOptions();
+                repository.add(task);
             }
         }
     }
     
-    private void sortTasks() {
-        toDoListModel.clear();
-        Collections.sort(originalTasks, (Task t1, Task t2) -> {
-            if (t1.isCompleted() != t2.isCompleted())
-                return t1.isCompleted() ? 1 : -1;
-            else
-                return (t1.dueDate.getTime() - t2.dueDate.getTime() > 0) ? 1 : -1;
-        });
-
-        for (Task task : originalTasks)toDoListModel.addElement(task);
+    // A window listing the tasks that just came due. It doesn't block the rest of the app
+    private void showReminders(List<Task> due) {
+        StringBuilder message = new StringBuilder(due.size() == 1 ? "This task is due today:\n" : due.size() + " tasks are due today:\n");
+        for (int i = 0; i < Math.min(due.size(), MAX_REMINDERS_LISTED); i++) message.append("\n  ").append(due.get(i).getText());
+        if (due.size() > MAX_REMINDERS_LISTED) message.append("\n  ... and ").append(due.size() - MAX_REMINDERS_LISTED).append(" more");
+        
+        JDialog dialog = new JOptionPane(message.toString(), JOptionPane.INFORMATION_MESSAGE).createDialog(TodoListApp.this, "Reminders");
+        dialog.setModal(false);
+        dialog.setVisible(true);
     }
-
-    // Options for filtering tasks
-    private class FilterOptions {
-        public boolean showComplete = true;
-        public boolean showIncomplete = true;
-        public boolean clearSelection = true;
-        public Date date = null;
-        public String priority = null;
-        
-        public FilterOptions() { }
-        public FilterOptions(Date date) {
-            this.date = date;
-            this.clearSelection = false;
-        }
-        public FilterOptions(boolean showComplete, boolean showIncomplete) {
-            this.showComplete = showComplete;
-            this.showIncomplete = showIncomplete;
-        }
-        public FilterOptions(Date date, String priority){
-            this.date = date;
-            this.priority = priority;
-            this.clearSelection = false;
-        }
+    
+    // Search box changed
+    private void search() {
+        EdtWatchdog.action("search");
+        showTasks();
     }
     
-    // Filter tasks based on provided options
     // Filter tasks based on provided options
     private void filterTasks(FilterOptions options) {
-        toDoListModel.clear();
+        EdtWatchdog.action("filter");
         if (options.clearSelection) calendarTable.clearSelection();
-
-        for (Task task : originalTasks) {
-            boolean matchesDate = options.date == null || isSameDay(options.date, task.dueDate);
-            boolean matchesPriority = options.priority == null || options.priority.equalsIgnoreCase(task.getPriority());
-
-            if (matchesDate && matchesPriority) {
-                if ((options.showComplete && task.isCompleted()) || (options.showIncomplete && !task.isCompleted())) {
-                    toDoListModel.addElement(task);
-                }
-            }
-        }
+        currentFilter = options;
+        showTasks();
     }
     
-    // Remove currently selected task
+    // Remove currently selected tasks
     private void removeSelectedTask() {
-        int selectedIndex = toDoList.getSelectedIndex();
-        if (selectedIndex != -1) {
-            Task removedTask = toDoListModel.getElementAt(selectedIndex); // Get the selected task
-            toDoListModel.remove(selectedIndex); // Remove from the list model
-            originalTasks.remove(removedTask); // Remove from the originalTasks ArrayList
-            tasksChangedUpdate();
+        List<Task> selected = toDoList.getSelectedValuesList();
+        if (!selected.isEmpty()) {
+            repository.removeAll(selected);
         }
     }
     
-    // Save tasks to tasks.txt in this directoty
-    private void saveTasksToFile() {
-        try (PrintWriter writer = new PrintWriter("tasks.txt")) {
-            for (int i = 0; i < originalTasks.size(); i++) {
-                Task task = originalTasks.get(i);
-                String taskText = task.getText();
-                boolean completed = task.isCompleted(); // Get the completion status
-                Date dueDate = task.getDueDate();
-                String dueDateString = dateFormat.format(dueDate);
-                String priority = task.getPriority();
-                writer.println(taskText + "|" + completed + "|" + dueDateString + "|" + priority); // Include completion status
-            }
-        } catch (IOException e) {
-            e.printStackTrace(System.err);
+    // Mark the selected tasks complete in one batch
+    private void completeSelectedTasks() {
+        List<Task> selected = toDoList.getSelectedValuesList();
+        if (!selected.isEmpty()) {
+            currentFilter = new FilterOptions();
+            repository.setCompleted(selected, true);
         }
     }
-
-    // Load tasks from tasks.txt in this directory
-    private void loadTasksFromFile() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("tasks.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 4) {  // Change this line
-                    String taskText = parts[0];
-                    boolean completed = Boolean.parseBoolean(parts[1]);
-                    
-                    // Parse dueDate
-                    Date dueDate = dateFormat.parse(parts[2]);
-    
-                    // Parse priority
-                    String priority = parts[3];
-                    
-                    Task task = new Task(taskText, completed, dueDate, priority);
-                    toDoListModel.addElement(task);
-                    originalTasks.add(task);
-                }
-            }
-            sortTasks();
-            toDoList.repaint();
-        } catch (IOException | ParseException e) {
-            e.printStackTrace(System.err);
-        }
+    
+    private void removeCompletedTasks() {
+        int result = JOptionPane.showConfirmDialog(TodoListApp.this, "Remove all completed tasks?", "Remove Completed", JOptionPane.OK_CANCEL_OPTION);
+        if (result == JOptionPane.OK_OPTION) repository.removeCompleted();
     }
     
-    // Check if two dates are on the same day
-    private boolean isSameDay(Date date1, Date date2) {
-        Calendar cal1 = Calendar.getInstance();
-        cal1.setTime(date1);
-        Calendar cal2 = Calendar.getInstance();
-        cal2.setTime(date2);
-        return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR)
-            && cal1.get(Calendar.MONTH) == cal2.get(Calendar.MONTH)
-            && cal1.get(Calendar.DAY_OF_MONTH) == cal2.get(Calendar.DAY_OF_MONTH);
+    // Add every task from a .csv (text,due date,priority[,completed]) or tasks.txt style file in one batch
+    private void importTasks() {
+        JFileChooser chooser = new JFileChooser(new File("."));
+        if (chooser.showOpenDialog(TodoListApp.this) != JFileChooser.APPROVE_OPTION) return;
+        
+        try {
+            List<Task> imported = TaskImporter.read(chooser.getSelectedFile().toPath());
+            currentFilter = new FilterOptions();
+            repository.addAll(imported);
+            JOptionPane.showMessageDialog(TodoListApp.this, "Imported " + imported.size() + " tasks.");
+        } catch (IOException | UncheckedIOException e) {
+            Metrics.error(e);
+            JOptionPane.showMessageDialog(TodoListApp.this, "Could not import " + chooser.getSelectedFile() + ": " + e.getMessage(),
+                "Import", JOptionPane.ERROR_MESSAGE);
+        }
     }
 }
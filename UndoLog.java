@@ -0,0 +1,81 @@
+// The changes that can be undone and redone, newest last, as the tasks each change touched rather than copies of the
+// list. A ring buffer of at most UNDO_LIMIT changes, dropping the oldest past that or past UNDO_TASKS tasks in all, so
+// removed tasks kept for undoing can't hold on to unbounded memory. Not thread-safe; TaskRepository guards it with
+// its lock
+class UndoLog {
+    static final int UNDO_LIMIT = Integer.getInteger("todolist.undoLimit", 100);
+    static final int UNDO_TASKS = Integer.getInteger("todolist.undoTasks", 100_000);
+
+    enum Op { ADD, REMOVE, COMPLETE, UNCOMPLETE }
+
+    static final class Change {
+        final Op op;
+        final Task[] tasks;
+
+        Change(Op op, Task[] tasks) {
+            this.op = op;
+            this.tasks = tasks;
+        }
+    }
+
+    private final Change[] changes;
+    private final int taskLimit;
+    private int first; // Slot of the oldest change
+    private int size; // Changes in the buffer
+    private int undoable; // The first undoable changes can be undone; the rest were undone and can be redone
+    private long taskCount;
+
+    UndoLog(int limit, int taskLimit) {
+        this.changes = new Change[Math.max(limit, 1)];
+        this.taskLimit = taskLimit;
+    }
+
+    // A new change, which can't be redone past. One touching more than the task limit can't be kept at all, and as
+    // the changes before it can no longer be undone in order, they go too
+    void record(Op op, Task[] tasks) {
+        if (tasks.length == 0) return;
+        while (size > undoable) drop(slot(--size));
+        if (tasks.length > taskLimit) {
+            clear();
+            return;
+        }
+        while (size == changes.length || taskCount + tasks.length > taskLimit) dropOldest();
+        changes[slot(size++)] = new Change(op, tasks);
+        undoable = size;
+        taskCount += tasks.length;
+    }
+
+    // The change to undo, or null if there isn't one
+    Change undo() {
+        if (undoable == 0) return null;
+        return changes[slot(--undoable)];
+    }
+
+    // The change to redo, or null if there isn't one
+    Change redo() {
+        if (undoable == size) return null;
+        return changes[slot(undoable++)];
+    }
+
+    void clear() {
+        while (size > 0) drop(slot(--size));
+        first = 0;
+        undoable = 0;
+    }
+
+    private void dropOldest() {
+        drop(first);
+        first = (first + 1) % changes.length;
+        size--;
+        undoable--;
+    }
+
+    private void drop(int slot) {
+        taskCount -= changes[slot].tasks.length;
+        changes[slot] = null;
+    }
+
+    private int slot(int index) {
+        return (first + index) % changes.length;
+    }
+}